@@ -0,0 +1,104 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.benchmark;
+
+import ivl.android.moneybalance.data.BalanceEngine;
+import ivl.android.moneybalance.data.BalanceSheet;
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.ExpenseTable;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Aggregations over a whole calculation: the summary figures and the date
+// range, from a typical trip up to an extreme long-running calculation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CalculationBenchmark {
+
+	@Param({ "5", "50" })
+	public int persons;
+
+	@Param({ "100", "10000", "200000" })
+	public int expenses;
+
+	private Calculation calculation;
+	private ExpenseTable table;
+
+	@Setup
+	public void setup() {
+		calculation = Fixtures.createCalculation(persons, expenses, 42);
+		table = ExpenseTable.of(calculation);
+	}
+
+	// includes copying the expenses into a table
+	@Benchmark
+	public BalanceSheet computeBalances() {
+		return BalanceEngine.compute(calculation);
+	}
+
+	@Benchmark
+	public BalanceSheet computeBalancesFromTable() {
+		return BalanceEngine.compute(table);
+	}
+
+	@Benchmark
+	public long getFixedExpenseTotal() {
+		return calculation.getFixedExpenseTotal();
+	}
+
+	// the id lookups done per row when loading expenses
+	@Benchmark
+	public int resolveIds() {
+		int found = 0;
+		for (Expense expense : calculation.getExpenses()) {
+			if (calculation.getPersonById(expense.getPerson().getId()) != null)
+				found++;
+			if (calculation.getCurrencyById(expense.getCurrency().getId()) != null)
+				found++;
+		}
+		return found;
+	}
+
+	@Benchmark
+	public Calendar getFirstDate() {
+		return calculation.getFirstDate();
+	}
+
+	@Benchmark
+	public Calendar getLastDate() {
+		return calculation.getLastDate();
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.benchmark;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.filter.CsvOutput;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvOutputBenchmark {
+
+	@Param({ "5", "50" })
+	public int persons;
+
+	@Param({ "100", "10000" })
+	public int expenses;
+
+	private Calculation calculation;
+
+	@Setup
+	public void setup() {
+		calculation = Fixtures.createCalculation(persons, expenses, 42);
+	}
+
+	@Benchmark
+	public String toCsv() {
+		return new CsvOutput(calculation).toCsv();
+	}
+
+	@Benchmark
+	public void writeStreaming() throws IOException {
+		Writer writer = new BufferedWriter(new NullWriter());
+		new CsvOutput(calculation).write(writer);
+	}
+
+	private static class NullWriter extends Writer {
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+		}
+		@Override
+		public void flush() {
+		}
+		@Override
+		public void close() {
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.benchmark;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.Person;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Share computation of all expenses of a calculation, through the List
+// adapters and through the primitive buffer API.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpenseBenchmark {
+
+	@Param({ "4", "20", "200" })
+	public int persons;
+
+	@Param({ "1000" })
+	public int expenses;
+
+	private Calculation calculation;
+	private long[] shares;
+
+	@Setup
+	public void setup() {
+		calculation = Fixtures.createCalculation(persons, expenses, 42);
+		shares = new long[persons];
+	}
+
+	@Benchmark
+	public void getShares(Blackhole blackhole) {
+		List<Person> personList = calculation.getPersons();
+		for (Expense expense : calculation.getExpenses())
+			blackhole.consume(expense.getShares(personList));
+	}
+
+	@Benchmark
+	public void getExchangedShares(Blackhole blackhole) {
+		List<Person> personList = calculation.getPersons();
+		for (Expense expense : calculation.getExpenses())
+			blackhole.consume(expense.getExchangedShares(personList));
+	}
+
+	@Benchmark
+	public long getExchangedFixedShares() {
+		long sum = 0;
+		for (Expense expense : calculation.getExpenses()) {
+			expense.getExchangedFixedShares(shares);
+			sum += shares[0];
+		}
+		return sum;
+	}
+
+}
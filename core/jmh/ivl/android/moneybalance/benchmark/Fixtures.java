@@ -0,0 +1,47 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.benchmark;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.CalculationGenerator;
+
+import java.util.Random;
+
+// Builds in-memory calculations for the benchmarks. The same seed always
+// gives the same calculation.
+class Fixtures {
+
+	static Calculation createCalculation(int personCount, int expenseCount, long seed) {
+		return CalculationGenerator.of(seed, personCount, expenseCount, "EUR", "USD", "GBP", "JPY", "CHF").generate();
+	}
+
+	// Net balances in minor units that add up to zero, about a tenth of them
+	// already settled.
+	static long[] createBalances(int personCount, long seed) {
+		Random random = new Random(seed);
+		long[] net = new long[personCount];
+		long sum = 0;
+		for (int i = 0; i < personCount - 1; i++) {
+			if (random.nextInt(10) != 0)
+				net[i] = random.nextInt(200000) - 100000;
+			sum += net[i];
+		}
+		net[personCount - 1] = -sum;
+		return net;
+	}
+
+}
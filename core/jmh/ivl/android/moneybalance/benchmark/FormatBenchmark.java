@@ -0,0 +1,81 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.benchmark;
+
+import ivl.android.moneybalance.CurrencyHelper;
+
+import java.text.ParseException;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Formatting an amount as a list row does, with a new helper per call, with a
+// cached one, and with the fast path on minor units; and parsing an amount.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormatBenchmark {
+
+	private final String[] codes = { "EUR", "USD", "JPY" };
+	private int next = 0;
+	private final StringBuilder buffer = new StringBuilder();
+
+	@Benchmark
+	public String newHelper() {
+		String code = codes[next++ % codes.length];
+		return new CurrencyHelper(Currency.getInstance(code), Locale.getDefault()).format(1234.5);
+	}
+
+	@Benchmark
+	public String cachedHelper() {
+		String code = codes[next++ % codes.length];
+		return CurrencyHelper.get(code).format(1234.5);
+	}
+
+	@Benchmark
+	public String formatFixed() {
+		String code = codes[next++ % codes.length];
+		return CurrencyHelper.get(code).formatFixed(123450);
+	}
+
+	@Benchmark
+	public int appendFixed() {
+		String code = codes[next++ % codes.length];
+		buffer.setLength(0);
+		CurrencyHelper.get(code).appendFixed(buffer, 123450, true);
+		return buffer.length();
+	}
+
+	@Benchmark
+	public double parse() throws ParseException {
+		return CurrencyHelper.get("EUR", Locale.ENGLISH, true).parse("1,234.50");
+	}
+
+}
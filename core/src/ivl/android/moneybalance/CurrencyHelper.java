@@ -0,0 +1,343 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Currency;
+import java.util.Locale;
+
+// Formats and parses amounts of one currency in one locale. Amounts in minor
+// units are formatted by a fast path using the separators, digits and
+// affixes of the locale's DecimalFormat, captured once; parse() has a fast
+// path for plain numbers. The fast paths are checked against NumberFormat
+// when a helper is created and NumberFormat is used wherever they do not
+// apply, so results are the same either way. Like NumberFormat, a helper is
+// not thread-safe.
+public class CurrencyHelper {
+
+	private static final int CACHE_SIZE = 16;
+
+	// exactly representable, as are all integers of up to 15 digits
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+	private static final int MAX_PARSE_DIGITS = 15;
+
+	private static final ThreadLocal<Cache> cache = new ThreadLocal<Cache>() {
+		@Override
+		protected Cache initialValue() {
+			return new Cache();
+		}
+	};
+
+	private final NumberFormat currencyFormat;
+	private final NumberFormat plainFormat;
+
+	private final int fractionDigits;
+	private final long decimalFactor;
+	// null where the fast path does not apply
+	private Layout currencyLayout;
+	private Layout plainLayout;
+	// reused by formatFixed() and appendFixed(); up to 19 digits and their
+	// grouping separators
+	private final StringBuilder buffer = new StringBuilder();
+	private final char[] digits = new char[40];
+
+	public CurrencyHelper(Currency currency, Locale locale) {
+		this(currency, locale, true);
+	}
+
+	// Grouping is fixed here, as cached helpers are shared and must not change
+	private CurrencyHelper(Currency currency, Locale locale, boolean groupingUsed) {
+		currencyFormat = NumberFormat.getCurrencyInstance(locale);
+		plainFormat = NumberFormat.getNumberInstance(locale);
+
+		currencyFormat.setCurrency(currency);
+		currencyFormat.setMinimumFractionDigits(currency.getDefaultFractionDigits());
+		currencyFormat.setMaximumFractionDigits(currency.getDefaultFractionDigits());
+
+		plainFormat.setMinimumFractionDigits(currency.getDefaultFractionDigits());
+		plainFormat.setMaximumFractionDigits(currency.getDefaultFractionDigits());
+
+		currencyFormat.setGroupingUsed(groupingUsed);
+		plainFormat.setGroupingUsed(groupingUsed);
+
+		fractionDigits = Math.max(currency.getDefaultFractionDigits(), 0);
+		long factor = 1;
+		for (int i = 0; i < fractionDigits; i++)
+			factor *= 10;
+		decimalFactor = factor;
+		captureLayouts();
+	}
+
+	public CurrencyHelper(Currency currency) {
+		this(currency, Locale.getDefault());
+	}
+
+	// A helper from the calling thread's cache, created on first use. Cached
+	// helpers must not be handed to other threads, as NumberFormat is not
+	// thread-safe.
+	public static CurrencyHelper get(String currencyCode, Locale locale, boolean groupingUsed) {
+		return cache.get().get(currencyCode, locale, groupingUsed);
+	}
+
+	public static CurrencyHelper get(String currencyCode) {
+		return get(currencyCode, Locale.getDefault(), true);
+	}
+
+	// Lookups in the calling thread's cache, for telling how well it works
+	public static int getCacheHitCount() {
+		return cache.get().hits;
+	}
+	public static int getCacheMissCount() {
+		return cache.get().misses;
+	}
+	public static int getCacheEvictionCount() {
+		return cache.get().evictions;
+	}
+
+	public String format(double value, boolean withSymbol) {
+		NumberFormat format = withSymbol ? currencyFormat : plainFormat;
+		return format.format(value);	
+	}
+
+	public String format(double value) {
+		return format(value, true);
+	}
+
+	// Formats an amount in minor units, e.g. cents, like format() does the
+	// same amount as a double
+	public String formatFixed(long fixedAmount, boolean withSymbol) {
+		buffer.setLength(0);
+		appendFixed(buffer, fixedAmount, withSymbol);
+		return buffer.toString();
+	}
+
+	public String formatFixed(long fixedAmount) {
+		return formatFixed(fixedAmount, true);
+	}
+
+	// Appends an amount in minor units as formatFixed() would return it.
+	// Allocates nothing beyond growing the builder.
+	public void appendFixed(StringBuilder out, long fixedAmount, boolean withSymbol) {
+		Layout layout = (withSymbol ? currencyLayout : plainLayout);
+		if (layout == null || fixedAmount == Long.MIN_VALUE) {
+			out.append(format((double) fixedAmount / decimalFactor, withSymbol));
+			return;
+		}
+
+		boolean negative = (fixedAmount < 0);
+		long amount = (negative ? -fixedAmount : fixedAmount);
+		long integer = amount / decimalFactor;
+		long fraction = amount % decimalFactor;
+
+		// integer digits from right to left
+		int start = digits.length;
+		int count = 0;
+		do {
+			if (layout.groupingSize > 0 && count > 0 && count % layout.groupingSize == 0)
+				digits[--start] = layout.groupingSeparator;
+			digits[--start] = (char) (layout.zeroDigit + (int) (integer % 10));
+			integer /= 10;
+			count++;
+		} while (integer > 0);
+
+		out.append(negative ? layout.negativePrefix : layout.positivePrefix);
+		out.append(digits, start, digits.length - start);
+		if (fractionDigits > 0) {
+			out.append(layout.decimalSeparator);
+			for (long unit = decimalFactor / 10; unit > 0; unit /= 10)
+				out.append((char) (layout.zeroDigit + (int) (fraction / unit % 10)));
+		}
+		out.append(negative ? layout.negativeSuffix : layout.positiveSuffix);
+	}
+
+	public double parse(String amountString) throws ParseException {
+		double value = parsePlain(amountString);
+		if (!Double.isNaN(value))
+			return value;
+		Number amount = plainFormat.parse(amountString);
+		return amount.doubleValue();
+	}
+
+	// Parses a plain number such as the plain format produces, with grouping
+	// separators only between digits; returns NaN for anything else, which
+	// is left to NumberFormat. The result is correctly rounded, like
+	// NumberFormat's: mantissa and power of ten are both exact doubles.
+	private double parsePlain(String text) {
+		Layout layout = plainLayout;
+		if (layout == null)
+			return Double.NaN;
+
+		int start;
+		int end;
+		boolean negative;
+		if (layout.negativePrefix.length() > 0 && text.startsWith(layout.negativePrefix) && text.endsWith(layout.negativeSuffix)) {
+			start = layout.negativePrefix.length();
+			end = text.length() - layout.negativeSuffix.length();
+			negative = true;
+		} else if (text.startsWith(layout.positivePrefix) && text.endsWith(layout.positiveSuffix)) {
+			start = layout.positivePrefix.length();
+			end = text.length() - layout.positiveSuffix.length();
+			negative = false;
+		} else {
+			return Double.NaN;
+		}
+
+		long mantissa = 0;
+		int digitCount = 0;
+		int scale = -1;
+		boolean afterDigit = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			int digit = c - layout.zeroDigit;
+			if (digit >= 0 && digit <= 9) {
+				if (++digitCount > MAX_PARSE_DIGITS)
+					return Double.NaN;
+				mantissa = mantissa * 10 + digit;
+				if (scale >= 0)
+					scale++;
+				afterDigit = true;
+			} else if (c == layout.decimalSeparator && scale < 0 && afterDigit) {
+				scale = 0;
+				afterDigit = false;
+			} else if (c == layout.groupingSeparator && layout.groupingSize > 0 && scale < 0 && afterDigit) {
+				afterDigit = false;
+			} else {
+				return Double.NaN;
+			}
+		}
+		if (!afterDigit)
+			return Double.NaN;
+
+		double value = (scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa);
+		return negative ? -value : value;
+	}
+
+	private void captureLayouts() {
+		currencyLayout = Layout.of(currencyFormat, true);
+		plainLayout = Layout.of(plainFormat, false);
+
+		// check the fast paths on an amount with all kinds of digits
+		long probe = 0;
+		for (int i = 0; i < 9 + fractionDigits && probe < Long.MAX_VALUE / 100; i++)
+			probe = probe * 10 + (i % 9) + 1;
+		for (long amount : new long[] { probe, -probe, 0, -1 }) {
+			double value = (double) amount / decimalFactor;
+			if (currencyLayout != null && !formatFixed(amount, true).equals(currencyFormat.format(value)))
+				currencyLayout = null;
+			if (plainLayout != null) {
+				String plain = plainFormat.format(value);
+				try {
+					if (!formatFixed(amount, false).equals(plain) || parsePlain(plain) != plainFormat.parse(plain).doubleValue())
+						plainLayout = null;
+				} catch (ParseException e) {
+					plainLayout = null;
+				}
+			}
+		}
+	}
+
+	// What formatting an amount takes, as captured from a DecimalFormat
+	private static class Layout {
+
+		String positivePrefix;
+		String positiveSuffix;
+		String negativePrefix;
+		String negativeSuffix;
+		char zeroDigit;
+		char decimalSeparator;
+		char groupingSeparator;
+		// 0 without grouping
+		int groupingSize;
+
+		// Returns null if the format is not a plain DecimalFormat.
+		static Layout of(NumberFormat format, boolean monetary) {
+			if (!(format instanceof DecimalFormat))
+				return null;
+			DecimalFormat decimalFormat = (DecimalFormat) format;
+			if (decimalFormat.getMultiplier() != 1 || decimalFormat.getMinimumIntegerDigits() != 1)
+				return null;
+			DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+
+			Layout layout = new Layout();
+			layout.positivePrefix = decimalFormat.getPositivePrefix();
+			layout.positiveSuffix = decimalFormat.getPositiveSuffix();
+			layout.negativePrefix = decimalFormat.getNegativePrefix();
+			layout.negativeSuffix = decimalFormat.getNegativeSuffix();
+			layout.zeroDigit = symbols.getZeroDigit();
+			layout.decimalSeparator = (monetary ? symbols.getMonetaryDecimalSeparator() : symbols.getDecimalSeparator());
+			layout.groupingSeparator = symbols.getGroupingSeparator();
+			layout.groupingSize = (decimalFormat.isGroupingUsed() ? decimalFormat.getGroupingSize() : 0);
+			return layout;
+		}
+
+	}
+
+	// Few currencies are shown at a time, so the cache is a short array
+	// searched linearly, which allocates nothing on a hit. When full, the
+	// least recently used helper is replaced.
+	private static class Cache {
+
+		private final String[] codes = new String[CACHE_SIZE];
+		private final Locale[] locales = new Locale[CACHE_SIZE];
+		private final boolean[] groupings = new boolean[CACHE_SIZE];
+		private final CurrencyHelper[] helpers = new CurrencyHelper[CACHE_SIZE];
+		private final long[] lastUses = new long[CACHE_SIZE];
+		private int size = 0;
+		private long clock = 0;
+
+		private int hits = 0;
+		private int misses = 0;
+		private int evictions = 0;
+
+		CurrencyHelper get(String currencyCode, Locale locale, boolean groupingUsed) {
+			clock++;
+			for (int i = 0; i < size; i++) {
+				if (groupings[i] == groupingUsed && codes[i].equals(currencyCode) && locales[i].equals(locale)) {
+					hits++;
+					lastUses[i] = clock;
+					return helpers[i];
+				}
+			}
+
+			misses++;
+			CurrencyHelper helper = new CurrencyHelper(Currency.getInstance(currencyCode), locale, groupingUsed);
+			int slot;
+			if (size < CACHE_SIZE) {
+				slot = size++;
+			} else {
+				slot = 0;
+				for (int i = 1; i < size; i++)
+					if (lastUses[i] < lastUses[slot])
+						slot = i;
+				evictions++;
+			}
+			codes[slot] = currencyCode;
+			locales[slot] = locale;
+			groupings[slot] = groupingUsed;
+			helpers[slot] = helper;
+			lastUses[slot] = clock;
+			return helper;
+		}
+
+	}
+
+}
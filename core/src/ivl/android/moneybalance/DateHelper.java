@@ -0,0 +1,61 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance;
+
+import ivl.android.moneybalance.data.EpochDay;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+// Formats epoch days for display. Lists show many expenses on few distinct
+// days, so formatted strings are kept in a small direct-mapped cache and a
+// repeated day costs neither a Calendar nor a DateFormat call.
+public class DateHelper {
+
+	private static final int CACHE_SIZE = 256;
+
+	private final DateFormat format;
+	private final GregorianCalendar calendar = new GregorianCalendar();
+	private final Date date = new Date();
+	private final int[] cachedDays = new int[CACHE_SIZE];
+	private final String[] cachedStrings = new String[CACHE_SIZE];
+
+	public DateHelper(DateFormat format) {
+		this.format = format;
+		calendar.setTimeZone(format.getTimeZone());
+	}
+
+	public DateHelper() {
+		this(DateFormat.getDateInstance());
+	}
+
+	public String format(int epochDay) {
+		int slot = epochDay & (CACHE_SIZE - 1);
+		String cached = cachedStrings[slot];
+		if (cached != null && cachedDays[slot] == epochDay)
+			return cached;
+
+		EpochDay.toCalendar(epochDay, calendar);
+		date.setTime(calendar.getTimeInMillis());
+		String formatted = format.format(date);
+		cachedDays[slot] = epochDay;
+		cachedStrings[slot] = formatted;
+		return formatted;
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+// Amounts a person has paid and consumed, in minor units of the main
+// currency of the calculation. The id is the id of the person.
+public class Balance extends DataObject {
+
+	private final String personName;
+	private long paid;
+	private long consumed;
+
+	public Balance(String personName) {
+		this.personName = personName;
+	}
+
+	public String getPersonName() {
+		return personName;
+	}
+
+	public long getPaid() {
+		return paid;
+	}
+	public void setPaid(long paid) {
+		this.paid = paid;
+	}
+
+	public long getConsumed() {
+		return consumed;
+	}
+	public void setConsumed(long consumed) {
+		this.consumed = consumed;
+	}
+
+	public long getNet() {
+		return paid - consumed;
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.Arrays;
+
+// Computes the balances and summary figures of a calculation in a single
+// pass over the columns of its expense table. Amounts are summed per
+// currency and exchanged at the end, see CurrencySubtotals.
+public class BalanceEngine {
+
+	private BalanceEngine() {}
+
+	public static BalanceSheet compute(Calculation calculation) {
+		return compute(ExpenseTable.of(calculation));
+	}
+
+	public static BalanceSheet compute(ExpenseTable table) {
+		CurrencySubtotals subtotals = new CurrencySubtotals(table.getPersonCount());
+		// slots by the table's currency positions and rate period + 1,
+		// assigned on first use
+		int[][] slots = new int[table.getCurrencyCount()][];
+		for (int i = 0; i < slots.length; i++) {
+			Currency currency = table.getCurrencyAt(i);
+			slots[i] = new int[currency.getRatePeriodCount()];
+			Arrays.fill(slots[i], -1);
+			slots[i][0] = subtotals.slotOf(currency);
+		}
+
+		long[] shares = new long[table.getPersonCount()];
+		int first = Integer.MAX_VALUE;
+		int last = Integer.MIN_VALUE;
+
+		for (int row = 0; row < table.size(); row++) {
+			int day = table.getEpochDay(row);
+			int currency = table.getCurrencyIndex(row);
+			if (currency >= 0) {
+				int[] currencySlots = slots[currency];
+				int slot = currencySlots[0];
+				if (currencySlots.length > 1) {
+					int period = table.getCurrencyAt(currency).getRatePeriod(day);
+					slot = currencySlots[period + 1];
+					if (slot < 0)
+						slot = currencySlots[period + 1] = subtotals.slotOf(table.getCurrencyAt(currency), period);
+				}
+				long amount = table.getFixedAmount(row);
+				subtotals.addTotal(slot, amount);
+
+				int payer = table.getPayer(row);
+				if (payer >= 0)
+					subtotals.addPaid(slot, payer, amount);
+
+				table.split(row, amount, shares);
+				for (int i = 0; i < shares.length; i++)
+					subtotals.addConsumed(slot, i, shares[i]);
+			}
+
+			if (day < first)
+				first = day;
+			if (day > last)
+				last = day;
+		}
+
+		long mainDecimalFactor = table.getCalculation().getMainCurrency().getDecimalFactor();
+		BalanceSheet sheet = new BalanceSheet(subtotals, mainDecimalFactor);
+		sheet.modificationCount = table.getModificationCount();
+		sheet.rateChangeCount = table.getRateChangeCount();
+		sheet.expenseCount = table.size();
+		sheet.firstDay = first;
+		sheet.lastDay = last;
+		return sheet;
+	}
+
+}
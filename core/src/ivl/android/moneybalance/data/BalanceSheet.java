@@ -0,0 +1,115 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.Calendar;
+
+// Result of BalanceEngine: per-person figures, indexed by the position of the
+// person in the calculation, and totals. Amounts are in minor units of the
+// main currency, exchanged from the per-currency subtotals.
+public class BalanceSheet {
+
+	private final long decimalFactor;
+	private final CurrencySubtotals subtotals;
+	private final long[] paid;
+	private final long[] consumed;
+	private final long expenseTotal;
+	int expenseCount;
+	// epoch days; only meaningful if there are expenses
+	int firstDay;
+	int lastDay;
+	int modificationCount;
+	int rateChangeCount;
+
+	BalanceSheet(CurrencySubtotals subtotals, long decimalFactor) {
+		this.decimalFactor = decimalFactor;
+		this.subtotals = subtotals;
+		paid = new long[subtotals.getPersonCount()];
+		consumed = new long[subtotals.getPersonCount()];
+		expenseTotal = subtotals.exchange(decimalFactor, paid, consumed);
+	}
+
+	// The same sheet with the subtotals exchanged again, after exchange rates
+	// have changed but the expenses have not
+	BalanceSheet exchange(long decimalFactor, int modificationCount, int rateChangeCount) {
+		BalanceSheet sheet = new BalanceSheet(subtotals, decimalFactor);
+		sheet.expenseCount = expenseCount;
+		sheet.firstDay = firstDay;
+		sheet.lastDay = lastDay;
+		sheet.modificationCount = modificationCount;
+		sheet.rateChangeCount = rateChangeCount;
+		return sheet;
+	}
+
+	// The sums in the expenses' own currencies; must not be modified
+	public CurrencySubtotals getSubtotals() {
+		return subtotals;
+	}
+
+	// Calculation.getModificationCount() at the time of computation; the
+	// sheet is stale once the calculation's count differs
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
+	public long getDecimalFactor() {
+		return decimalFactor;
+	}
+
+	public int getPersonCount() {
+		return paid.length;
+	}
+
+	public long getPaid(int personIndex) {
+		return paid[personIndex];
+	}
+
+	public long getConsumed(int personIndex) {
+		return consumed[personIndex];
+	}
+
+	public long getNet(int personIndex) {
+		return paid[personIndex] - consumed[personIndex];
+	}
+
+	public int getExpenseCount() {
+		return expenseCount;
+	}
+
+	public long getFixedExpenseTotal() {
+		return expenseTotal;
+	}
+
+	public double getExpenseTotal() {
+		return Money.toDouble(expenseTotal, decimalFactor);
+	}
+
+	public Calendar getFirstDate() {
+		return expenseCount > 0 ? EpochDay.toCalendar(firstDay) : null;
+	}
+
+	public Calendar getLastDate() {
+		return expenseCount > 0 ? EpochDay.toCalendar(lastDay) : null;
+	}
+
+	public long getDuration() {
+		if (expenseCount == 0)
+			return 0;
+		return lastDay - firstDay + 1;
+	}
+
+}
@@ -0,0 +1,495 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Calculation extends DataObject {
+
+	private String title;
+	private String mainCurrencyCode;
+	private CurrencyList currencies = new CurrencyList(new ArrayList<Currency>());
+	private PersonList persons = new PersonList(new ArrayList<Person>());
+	private ExpenseList expenses = new ExpenseList(new ArrayList<Expense>());
+
+	// Lookup indexes into the lists above. The lists report changes to
+	// themselves and their persons and currencies report changes of their
+	// ids and codes, so an index is only rebuilt on the first lookup after
+	// such a change.
+	private final IdIndex personIndex = new IdIndex();
+	private final IdIndex currencyIndex = new IdIndex();
+	private final Map<String, Integer> currencyCodeIndex = new HashMap<>();
+	private boolean personIndexValid = false;
+	private boolean currencyIndexValid = false;
+
+	// Aggregates over the expenses. The expense list, the expenses and the
+	// currencies report every change, so the sums per currency and the date
+	// range are updated incrementally; the date range is only rescanned when
+	// an expense on its boundary goes away. An exchange rate change only
+	// re-exchanges the sums.
+	// The modification count grows with every change that affects a snapshot
+	// of the calculation, like a BalanceSheet.
+	private int modificationCount = 0;
+	private int rateChangeCount = 0;
+	private final CurrencySubtotals expenseSums = new CurrencySubtotals(0);
+	private boolean sumsValid = false;
+	private boolean totalValid = false;
+	private long fixedExpenseTotal;
+	private boolean datesValid = false;
+	private boolean hasDates;
+	private int firstDay;
+	private int lastDay;
+	private BalanceSheet balanceSheet;
+
+	// Notifies the calculation of all changes to its expense list
+	private class ExpenseList extends AbstractList<Expense> {
+
+		private final ArrayList<Expense> list;
+
+		ExpenseList(ArrayList<Expense> list) {
+			this.list = list;
+		}
+
+		@Override
+		public Expense get(int index) {
+			return list.get(index);
+		}
+
+		@Override
+		public int size() {
+			return list.size();
+		}
+
+		@Override
+		public Expense set(int index, Expense expense) {
+			Expense old = list.set(index, expense);
+			if (old != expense) {
+				detach(old);
+				attach(expense);
+			}
+			return old;
+		}
+
+		@Override
+		public void add(int index, Expense expense) {
+			list.add(index, expense);
+			attach(expense);
+		}
+
+		@Override
+		public Expense remove(int index) {
+			Expense expense = list.remove(index);
+			detach(expense);
+			return expense;
+		}
+
+		@Override
+		public void clear() {
+			detachAll();
+			list.clear();
+		}
+
+		void detachAll() {
+			for (Expense expense : list)
+				expense.attached = false;
+			invalidateAggregates();
+		}
+
+	}
+
+	// Notifies the calculation of all changes to its person or currency list
+	private abstract class MemberList<T> extends AbstractList<T> {
+
+		private final ArrayList<T> list;
+
+		MemberList(List<T> list) {
+			this.list = new ArrayList<>(list);
+		}
+
+		@Override
+		public T get(int index) {
+			return list.get(index);
+		}
+
+		@Override
+		public int size() {
+			return list.size();
+		}
+
+		@Override
+		public T set(int index, T member) {
+			T old = list.set(index, member);
+			if (old != member) {
+				removed(old);
+				added(member);
+			}
+			return old;
+		}
+
+		@Override
+		public void add(int index, T member) {
+			list.add(index, member);
+			added(member);
+		}
+
+		@Override
+		public T remove(int index) {
+			T member = list.remove(index);
+			removed(member);
+			return member;
+		}
+
+		abstract void added(T member);
+		abstract void removed(T member);
+
+	}
+
+	private class PersonList extends MemberList<Person> {
+
+		PersonList(List<Person> persons) {
+			super(persons);
+		}
+
+		@Override
+		void added(Person person) {
+			personIndexValid = false;
+			modificationCount++;
+		}
+
+		@Override
+		void removed(Person person) {
+			personIndexValid = false;
+			modificationCount++;
+		}
+
+	}
+
+	private class CurrencyList extends MemberList<Currency> {
+
+		CurrencyList(List<Currency> currencies) {
+			super(currencies);
+			for (Currency currency : currencies)
+				currency.calculation = Calculation.this;
+		}
+
+		@Override
+		void added(Currency currency) {
+			currency.calculation = Calculation.this;
+			currencyIndexValid = false;
+			invalidateAggregates();
+		}
+
+		@Override
+		void removed(Currency currency) {
+			detach(currency);
+			currencyIndexValid = false;
+			invalidateAggregates();
+		}
+
+		void detachAll() {
+			for (Currency currency : this)
+				detach(currency);
+		}
+
+		private void detach(Currency currency) {
+			if (currency.calculation == Calculation.this)
+				currency.calculation = null;
+		}
+
+	}
+
+	public Calculation(String title, String mainCurrencyCode) {
+		this.title = title;
+		setMainCurrencyCode(mainCurrencyCode);
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getMainCurrencyCode() {
+		return mainCurrencyCode;
+	}
+	public void setMainCurrencyCode(String mainCurrencyCode) {
+		invalidateAggregates();
+		Currency currency = getCurrencyByCode(mainCurrencyCode);
+		if (currency != null) {
+			currency.setExchangeRate(1, 1);
+			currency.clearExchangeRates();
+		} else {
+			currency = new Currency(getId());
+			currency.setCurrencyCode(mainCurrencyCode);
+			currencies.add(currency);
+		}
+		this.mainCurrencyCode = mainCurrencyCode;
+	}
+	public Currency getMainCurrency() {
+		Currency currency = getCurrencyByCode(mainCurrencyCode);
+		return currency != null ? currency : currencies.get(0);
+	}
+
+	public List<Currency> getCurrencies() {
+		return currencies;
+	}
+	public void setCurrencies(List<Currency> currencies) {
+		this.currencies.detachAll();
+		this.currencies = new CurrencyList(currencies);
+		currencyIndexValid = false;
+		invalidateAggregates();
+	}
+	public Currency getCurrencyById(long currencyId) {
+		int index = getCurrencyIndex(currencyId);
+		return index >= 0 ? currencies.get(index) : null;
+	}
+	public int getCurrencyIndex(long currencyId) {
+		updateCurrencyIndexes();
+		return currencyIndex.get(currencyId);
+	}
+	public Currency getCurrencyByCode(String currencyCode) {
+		updateCurrencyIndexes();
+		Integer index = currencyCodeIndex.get(currencyCode);
+		return index != null ? currencies.get(index) : null;
+	}
+	private void updateCurrencyIndexes() {
+		if (currencyIndexValid)
+			return;
+		currencyIndex.rebuild(currencies);
+		currencyCodeIndex.clear();
+		for (int i = currencies.size() - 1; i >= 0; i--)
+			currencyCodeIndex.put(currencies.get(i).getCurrencyCode(), i);
+		currencyIndexValid = true;
+	}
+
+	public List<Person> getPersons() {
+		return persons;
+	}
+	public void setPersons(List<Person> persons) {
+		this.persons = new PersonList(persons);
+		personIndexValid = false;
+		modificationCount++;
+	}
+	public int getPersonCount() {
+		return persons.size();
+	}
+	public Person getPerson(int index) {
+		return persons.get(index);
+	}
+	public Person getPersonById(long personId) {
+		int index = getPersonIndex(personId);
+		return index >= 0 ? persons.get(index) : null;
+	}
+	// Position of the person in getPersons(), which is also the index into
+	// expense weights and balance sheets; -1 if there is no such person.
+	public int getPersonIndex(long personId) {
+		if (!personIndexValid) {
+			personIndex.rebuild(persons);
+			personIndexValid = true;
+		}
+		return personIndex.get(personId);
+	}
+
+	public List<Expense> getExpenses() {
+		return expenses;
+	}
+	public void setExpenses(List<Expense> expenses) {
+		this.expenses.detachAll();
+		this.expenses = new ExpenseList(new ArrayList<>(expenses));
+		for (Expense expense : expenses)
+			expense.attached = true;
+	}
+
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
+	// The number of exchange rate or currency code changes seen, which are
+	// part of the modification count
+	int getRateChangeCount() {
+		return rateChangeCount;
+	}
+
+	// The balances of all persons, recomputed only if the calculation has
+	// changed since the last call. If only exchange rates have changed, the
+	// previous sheet's subtotals are exchanged again.
+	public BalanceSheet getBalanceSheet() {
+		int count = getModificationCount();
+		if (balanceSheet != null && balanceSheet.modificationCount != count) {
+			if (balanceSheet.modificationCount - balanceSheet.rateChangeCount == count - rateChangeCount)
+				balanceSheet = balanceSheet.exchange(getMainCurrency().getDecimalFactor(), count, rateChangeCount);
+			else
+				balanceSheet = null;
+		}
+		if (balanceSheet == null)
+			balanceSheet = BalanceEngine.compute(this);
+		return balanceSheet;
+	}
+
+	// The total in minor units of the main currency. Amounts are summed per
+	// currency and rate period and exchanged at the end, like in a
+	// BalanceSheet.
+	public long getFixedExpenseTotal() {
+		if (!sumsValid) {
+			expenseSums.clear();
+			for (Expense expense : expenses)
+				addSum(expense, 1);
+			sumsValid = true;
+			totalValid = false;
+		}
+		if (!totalValid) {
+			fixedExpenseTotal = expenseSums.exchangeTotal(getMainCurrency().getDecimalFactor());
+			totalValid = true;
+		}
+		return fixedExpenseTotal;
+	}
+
+	private void addSum(Expense expense, int sign) {
+		Currency currency = expense.getCurrency();
+		if (currency != null) {
+			int slot = expenseSums.slotOf(currency, currency.getRatePeriod(expense.getEpochDay()));
+			expenseSums.addTotal(slot, sign * expense.getFixedAmount());
+		}
+	}
+
+	public double getExpenseTotal() {
+		return Money.toDouble(getFixedExpenseTotal(), getMainCurrency().getDecimalFactor());
+	}
+
+	public Calendar getFirstDate() {
+		updateDates();
+		return hasDates ? EpochDay.toCalendar(firstDay) : null;
+	}
+
+	public Calendar getLastDate() {
+		updateDates();
+		return hasDates ? EpochDay.toCalendar(lastDay) : null;
+	}
+
+	public long getDuration() {
+		updateDates();
+		if (!hasDates)
+			return 0;
+		return lastDay - firstDay + 1;
+	}
+
+	private void updateDates() {
+		if (datesValid)
+			return;
+		hasDates = false;
+		for (Expense expense : expenses)
+			addDate(expense.getEpochDay());
+		datesValid = true;
+	}
+
+	private void addDate(int day) {
+		if (!hasDates || day < firstDay)
+			firstDay = day;
+		if (!hasDates || day > lastDay)
+			lastDay = day;
+		hasDates = true;
+	}
+
+	private void invalidateAggregates() {
+		sumsValid = false;
+		datesValid = false;
+		modificationCount++;
+	}
+
+	private void attach(Expense expense) {
+		expense.attached = true;
+		addAggregates(expense);
+		modificationCount++;
+	}
+
+	private void detach(Expense expense) {
+		removeAggregates(expense);
+		expense.attached = false;
+		modificationCount++;
+	}
+
+	private void addAggregates(Expense expense) {
+		if (sumsValid) {
+			addSum(expense, 1);
+			totalValid = false;
+		}
+		if (datesValid)
+			addDate(expense.getEpochDay());
+	}
+
+	private void removeAggregates(Expense expense) {
+		if (sumsValid) {
+			addSum(expense, -1);
+			totalValid = false;
+		}
+		if (datesValid) {
+			int day = expense.getEpochDay();
+			if (!hasDates || day <= firstDay || day >= lastDay)
+				datesValid = false;
+		}
+	}
+
+	// Called by an expense before and after a change of its amount, currency
+	// or date
+	void expenseChanging(Expense expense) {
+		if (expense.attached)
+			removeAggregates(expense);
+	}
+	void expenseChanged(Expense expense) {
+		if (expense.attached) {
+			addAggregates(expense);
+			modificationCount++;
+		}
+	}
+
+	// Called by an expense after any other change
+	void expenseModified(Expense expense) {
+		if (expense.attached)
+			modificationCount++;
+	}
+
+	// Called by a person after a change of its id, and by a currency of the
+	// calculation after a change of its id or code
+	void personIdChanged() {
+		personIndexValid = false;
+	}
+	void currencyKeyChanged() {
+		currencyIndexValid = false;
+	}
+
+	// Called by a currency of the calculation after a change of its code or
+	// an exchange rate, which invalidates the exchanged total but not the
+	// sums per currency and rate period. Adding or removing a dated rate
+	// moves expenses between periods, so it invalidates the sums as well.
+	void currencyChanged(boolean periodsChanged) {
+		if (periodsChanged)
+			sumsValid = false;
+		else
+			rateChangeCount++;
+		totalValid = false;
+		modificationCount++;
+	}
+
+	@Override
+	public String toString() {
+		return getTitle();
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+// Generates synthetic calculations for scale testing. The same settings and
+// seed always produce the same calculation. Objects get consecutive ids
+// starting at 1, so the result can be used in memory as is; writing it to a
+// database assigns new ones.
+public class CalculationGenerator {
+
+	private long seed = 0;
+	private String title = "Generated";
+	private int personCount = 5;
+	private int expenseCount = 1000;
+	private String[] currencyCodes = { "EUR" };
+	private double foreignCurrencyRatio = 0.25;
+	private double unevenSplitRatio = 0.2;
+	private int startDay = EpochDay.of(2016, 1, 1);
+	private int daySpan = 365;
+	private double maxAmount = 200;
+
+	// A generator with the settings most fixtures vary; the others keep their
+	// defaults and can still be changed before calling generate().
+	public static CalculationGenerator of(long seed, int personCount, int expenseCount, String... currencyCodes) {
+		CalculationGenerator generator = new CalculationGenerator();
+		generator.setSeed(seed);
+		generator.setPersonCount(personCount);
+		generator.setExpenseCount(expenseCount);
+		generator.setCurrencyCodes(currencyCodes);
+		return generator;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public void setPersonCount(int personCount) {
+		if (personCount < 0)
+			throw new IllegalArgumentException("negative person count: " + personCount);
+		this.personCount = personCount;
+	}
+
+	// Expenses need at least one person to pay them.
+	public void setExpenseCount(int expenseCount) {
+		if (expenseCount < 0)
+			throw new IllegalArgumentException("negative expense count: " + expenseCount);
+		this.expenseCount = expenseCount;
+	}
+
+	// The first code is the main currency.
+	public void setCurrencyCodes(String... currencyCodes) {
+		if (currencyCodes.length == 0)
+			throw new IllegalArgumentException("no main currency");
+		this.currencyCodes = currencyCodes;
+	}
+
+	// Fraction of expenses paid in a currency other than the main one
+	public void setForeignCurrencyRatio(double foreignCurrencyRatio) {
+		this.foreignCurrencyRatio = foreignCurrencyRatio;
+	}
+
+	// Fraction of expenses split unevenly among a random subset of persons
+	public void setUnevenSplitRatio(double unevenSplitRatio) {
+		this.unevenSplitRatio = unevenSplitRatio;
+	}
+
+	public void setDateRange(Calendar startDate, int daySpan) {
+		if (daySpan < 0)
+			throw new IllegalArgumentException("negative day span: " + daySpan);
+		this.startDay = EpochDay.of(startDate);
+		this.daySpan = daySpan;
+	}
+
+	public void setMaxAmount(double maxAmount) {
+		this.maxAmount = maxAmount;
+	}
+
+	public Calculation generate() {
+		if (expenseCount > 0 && personCount == 0)
+			throw new IllegalArgumentException("expenses without persons");
+		Random random = new Random(seed);
+
+		Calculation calculation = new Calculation(title, currencyCodes[0]);
+		calculation.setId(1);
+
+		List<Currency> currencies = new ArrayList<>(currencyCodes.length);
+		for (int i = 0; i < currencyCodes.length; i++) {
+			Currency currency = new Currency(calculation.getId());
+			currency.setId(i + 1);
+			currency.setCurrencyCode(currencyCodes[i]);
+			if (i > 0)
+				currency.setExchangeRate(0.5 + random.nextInt(20000) / 10000.0, 1.0);
+			currencies.add(currency);
+		}
+		calculation.setCurrencies(currencies);
+
+		List<Person> persons = new ArrayList<>(personCount);
+		for (int i = 0; i < personCount; i++) {
+			Person person = new Person(calculation);
+			person.setId(i + 1);
+			person.setName("Person " + (i + 1));
+			persons.add(person);
+		}
+		calculation.setPersons(persons);
+
+		List<Expense> expenses = new ArrayList<>(expenseCount);
+		for (int i = 0; i < expenseCount; i++) {
+			Expense expense = new Expense(calculation);
+			expense.setId(i + 1);
+			expense.setTitle("Expense " + (i + 1));
+			expense.setPerson(persons.get(random.nextInt(personCount)));
+
+			Currency currency = currencies.get(0);
+			if (currencies.size() > 1 && random.nextDouble() < foreignCurrencyRatio)
+				currency = currencies.get(1 + random.nextInt(currencies.size() - 1));
+			expense.setCurrency(currency);
+			expense.setAmount(0.01 + random.nextDouble() * maxAmount);
+
+			expense.setEpochDay(startDay + (daySpan > 0 ? random.nextInt(daySpan) : 0));
+
+			if (random.nextDouble() < unevenSplitRatio) {
+				double[] weights = new double[personCount];
+				for (int j = 0; j < personCount; j++)
+					if (random.nextBoolean())
+						weights[j] = 1 + random.nextInt(4) / 2.0;
+				// make sure at least one person takes part
+				weights[random.nextInt(personCount)] = 1;
+				expense.setWeights(weights);
+			}
+
+			expenses.add(expense);
+		}
+		calculation.setExpenses(expenses);
+
+		return calculation;
+	}
+
+}
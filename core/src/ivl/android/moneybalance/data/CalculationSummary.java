@@ -0,0 +1,113 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.Calendar;
+
+// Aggregated figures of a calculation, as shown in the calculation list.
+// The id is the id of the calculation.
+public class CalculationSummary extends DataObject {
+
+	private final String title;
+	private final String mainCurrencyCode;
+	private String personNames = "";
+	private int expenseCount;
+	private final long decimalFactor;
+	private long fixedExpenseTotal;
+	private boolean hasDates = false;
+	private int firstDay;
+	private int lastDay;
+
+	public CalculationSummary(String title, String mainCurrencyCode) {
+		this.title = title;
+		this.mainCurrencyCode = mainCurrencyCode;
+		decimalFactor = Money.getDecimalFactor(mainCurrencyCode);
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getMainCurrencyCode() {
+		return mainCurrencyCode;
+	}
+
+	public String getPersonNames() {
+		return personNames;
+	}
+	public void setPersonNames(String personNames) {
+		this.personNames = personNames;
+	}
+
+	public int getExpenseCount() {
+		return expenseCount;
+	}
+	public void setExpenseCount(int expenseCount) {
+		this.expenseCount = expenseCount;
+	}
+
+	public long getDecimalFactor() {
+		return decimalFactor;
+	}
+
+	// The total in minor units of the main currency
+	public long getFixedExpenseTotal() {
+		return fixedExpenseTotal;
+	}
+	public void setFixedExpenseTotal(long fixedExpenseTotal) {
+		this.fixedExpenseTotal = fixedExpenseTotal;
+	}
+
+	public double getExpenseTotal() {
+		return Money.toDouble(fixedExpenseTotal, decimalFactor);
+	}
+
+	public boolean hasDates() {
+		return hasDates;
+	}
+	// The date range in epoch days; only meaningful if hasDates()
+	public int getFirstEpochDay() {
+		return firstDay;
+	}
+	public int getLastEpochDay() {
+		return lastDay;
+	}
+	public void setDateRange(int firstDay, int lastDay) {
+		this.firstDay = firstDay;
+		this.lastDay = lastDay;
+		hasDates = true;
+	}
+
+	public Calendar getFirstDate() {
+		return hasDates ? EpochDay.toCalendar(firstDay) : null;
+	}
+	public Calendar getLastDate() {
+		return hasDates ? EpochDay.toCalendar(lastDay) : null;
+	}
+
+	public long getDuration() {
+		if (!hasDates)
+			return 0;
+		return lastDay - firstDay + 1;
+	}
+
+	@Override
+	public String toString() {
+		return getTitle();
+	}
+
+}
@@ -0,0 +1,250 @@
+package ivl.android.moneybalance.data;
+
+import ivl.android.moneybalance.CurrencyHelper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class Currency extends DataObject {
+
+	// The first day of the base rate period, which has no start
+	public static final int BASE_PERIOD_START = Integer.MIN_VALUE;
+
+	private final long calculationId;
+	private String currencyCode;
+	private long decimalFactor;
+	private final Rate baseRate = new Rate();
+
+	// Dated rates, each valid from its day until the next one; before the
+	// first one the base rate applies. Days are sorted for binary search.
+	private int rateCount = 0;
+	private int[] rateDays = new int[0];
+	private Rate[] rates = new Rate[0];
+
+	// set while the currency is in a calculation's currency list, which then
+	// gets notified of changes to the id, the code and the exchange rates
+	Calculation calculation;
+
+	public Currency(long calculationId) {
+		this.calculationId = calculationId;
+		decimalFactor = 1;
+		setExchangeRate(1.0, 1.0);
+	}
+
+	public long getCalculationId() {
+		return calculationId;
+	}
+
+	@Override
+	public void setId(long id) {
+		super.setId(id);
+		if (calculation != null)
+			calculation.currencyKeyChanged();
+	}
+
+	public String getCurrencyCode() {
+		return currencyCode;
+	}
+	public void setCurrencyCode(String currencyCode) {
+		this.currencyCode = currencyCode;
+		decimalFactor = Money.getDecimalFactor(currencyCode);
+		baseRate.update(decimalFactor);
+		for (int i = 0; i < rateCount; i++)
+			rates[i].update(decimalFactor);
+		if (calculation != null) {
+			calculation.currencyKeyChanged();
+			calculation.currencyChanged(false);
+		}
+	}
+
+	public long getDecimalFactor() {
+		return decimalFactor;
+	}
+
+	// The base rate
+	public double getExchangeRateThis() {
+		return baseRate.rateThis;
+	}
+	public double getExchangeRateMain() {
+		return baseRate.rateMain;
+	}
+	public void setExchangeRate(double rateThis, double rateMain) {
+		baseRate.set(rateThis, rateMain, decimalFactor);
+		changed(false);
+	}
+
+	// Sets the rate valid from the given day on, replacing one set for the
+	// same day.
+	public void setExchangeRate(int fromEpochDay, double rateThis, double rateMain) {
+		boolean added = false;
+		int index = Arrays.binarySearch(rateDays, 0, rateCount, fromEpochDay);
+		if (index < 0) {
+			index = -index - 1;
+			if (rateCount == rateDays.length) {
+				int capacity = Math.max(4, rateCount * 2);
+				int[] grownDays = new int[capacity];
+				Rate[] grownRates = new Rate[capacity];
+				System.arraycopy(rateDays, 0, grownDays, 0, rateCount);
+				System.arraycopy(rates, 0, grownRates, 0, rateCount);
+				rateDays = grownDays;
+				rates = grownRates;
+			}
+			System.arraycopy(rateDays, index, rateDays, index + 1, rateCount - index);
+			System.arraycopy(rates, index, rates, index + 1, rateCount - index);
+			rateDays[index] = fromEpochDay;
+			rates[index] = new Rate();
+			rateCount++;
+			added = true;
+		}
+		rates[index].set(rateThis, rateMain, decimalFactor);
+		changed(added);
+	}
+
+	public void removeExchangeRate(int fromEpochDay) {
+		int index = Arrays.binarySearch(rateDays, 0, rateCount, fromEpochDay);
+		if (index < 0)
+			return;
+		System.arraycopy(rateDays, index + 1, rateDays, index, rateCount - index - 1);
+		System.arraycopy(rates, index + 1, rates, index, rateCount - index - 1);
+		rateCount--;
+		rates[rateCount] = null;
+		changed(true);
+	}
+
+	public void clearExchangeRates() {
+		if (rateCount == 0)
+			return;
+		Arrays.fill(rates, null);
+		rateCount = 0;
+		changed(true);
+	}
+
+	private void changed(boolean periodsChanged) {
+		if (calculation != null)
+			calculation.currencyChanged(periodsChanged);
+	}
+
+	// Rate periods are numbered from -1 for the base rate up to
+	// getRatePeriodCount() - 2 for the last dated rate.
+	public int getRatePeriodCount() {
+		return rateCount + 1;
+	}
+
+	// The rate period of a day, by binary search
+	public int getRatePeriod(int epochDay) {
+		int index = Arrays.binarySearch(rateDays, 0, rateCount, epochDay);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	public int getRatePeriodStart(int period) {
+		return period < 0 ? BASE_PERIOD_START : rateDays[period];
+	}
+	public double getExchangeRateThis(int period) {
+		return rate(period).rateThis;
+	}
+	public double getExchangeRateMain(int period) {
+		return rate(period).rateMain;
+	}
+
+	private Rate rate(int period) {
+		return period < 0 ? baseRate : rates[period];
+	}
+
+	public String getSymbol() {
+		java.util.Currency currency = java.util.Currency.getInstance(currencyCode);
+		return currency.getSymbol();
+	}
+
+	// Shared helpers from the calling thread's cache; see CurrencyHelper.get()
+	public CurrencyHelper getCurrencyHelper() {
+		return CurrencyHelper.get(currencyCode);
+	}
+	public CurrencyHelper getCurrencyHelper(Locale locale) {
+		return CurrencyHelper.get(currencyCode, locale, true);
+	}
+
+	public double exchangeAmount(double thisCurrencyAmount) {
+		return thisCurrencyAmount * baseRate.rateMain / baseRate.rateThis;
+	}
+
+	// Converts an amount in minor units of this currency to minor units of
+	// the main currency at the base rate.
+	public long exchange(long fixedAmount, long mainDecimalFactor) {
+		return baseRate.exchange(fixedAmount, mainDecimalFactor);
+	}
+
+	// The same at the rate of the given period
+	public long exchange(long fixedAmount, long mainDecimalFactor, int period) {
+		return rate(period).exchange(fixedAmount, mainDecimalFactor);
+	}
+
+	// The same at the rate valid on the given day
+	public long exchangeOn(int epochDay, long fixedAmount, long mainDecimalFactor) {
+		return rate(getRatePeriod(epochDay)).exchange(fixedAmount, mainDecimalFactor);
+	}
+
+	// Exchange rate as an exact fraction from minor units of this currency to
+	// major units of the main currency, and the same fraction scaled to minor
+	// units of the last main currency seen by exchange(long, long).
+	private static class Rate {
+
+		double rateThis;
+		double rateMain;
+		private long rateNumerator;
+		private long rateDenominator;
+		private long mainDecimalFactor;
+		private long mainNumerator;
+		private long mainDenominator;
+
+		void set(double rateThis, double rateMain, long decimalFactor) {
+			this.rateThis = rateThis;
+			this.rateMain = rateMain;
+			update(decimalFactor);
+		}
+
+		// The rates are decimals entered by the user; their shortest decimal
+		// representation is taken as exact. Fractions that don't fit into 31
+		// bits after reduction are truncated to that precision.
+		void update(long decimalFactor) {
+			BigDecimal main = BigDecimal.valueOf(rateMain);
+			BigDecimal other = BigDecimal.valueOf(rateThis).multiply(BigDecimal.valueOf(decimalFactor));
+			int scale = Math.max(0, Math.max(main.scale(), other.scale()));
+			BigInteger numerator = main.setScale(scale).unscaledValue();
+			BigInteger denominator = other.setScale(scale).unscaledValue();
+			if (denominator.signum() <= 0 || numerator.signum() < 0) {
+				numerator = BigInteger.ZERO;
+				denominator = BigInteger.ONE;
+			}
+
+			BigInteger gcd = numerator.gcd(denominator);
+			if (gcd.signum() > 0) {
+				numerator = numerator.divide(gcd);
+				denominator = denominator.divide(gcd);
+			}
+			int excess = Math.max(numerator.bitLength(), denominator.bitLength()) - 31;
+			if (excess > 0) {
+				numerator = numerator.shiftRight(excess);
+				denominator = denominator.shiftRight(excess).max(BigInteger.ONE);
+			}
+
+			rateNumerator = numerator.longValue();
+			rateDenominator = denominator.longValue();
+			mainDecimalFactor = 0;
+		}
+
+		long exchange(long fixedAmount, long mainDecimalFactor) {
+			if (this.mainDecimalFactor != mainDecimalFactor) {
+				long numerator = rateNumerator * mainDecimalFactor;
+				long gcd = Money.gcd(numerator, rateDenominator);
+				mainNumerator = (gcd == 0 ? 0 : numerator / gcd);
+				mainDenominator = (gcd == 0 ? 1 : rateDenominator / gcd);
+				this.mainDecimalFactor = mainDecimalFactor;
+			}
+			return Money.multiply(fixedAmount, mainNumerator, mainDenominator);
+		}
+
+	}
+
+}
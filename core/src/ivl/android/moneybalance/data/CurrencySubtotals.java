@@ -0,0 +1,189 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.Arrays;
+
+// Sums of expenses in minor units of their own currency: the total per
+// currency and rate period, and per person what they paid and consumed.
+// Nothing is exchanged until exchange() is called, so after a rate change the
+// figures in the main currency cost one conversion per currency and period
+// instead of one per expense.
+//
+// Each currency's sum is exchanged once and then distributed over the persons
+// by cumulative rounding, so the exchanged parts add up to the exchanged sum
+// and paid and consumed amounts still balance exactly.
+public class CurrencySubtotals {
+
+	private final int personCount;
+
+	private Currency[] currencies = new Currency[2];
+	private int[] periods = new int[2];
+	private int currencyCount = 0;
+	private long[] totals = new long[2];
+	// indexed by slot * personCount + person
+	private long[] paid;
+	private long[] consumed;
+
+	public CurrencySubtotals(int personCount) {
+		this.personCount = personCount;
+		paid = new long[2 * personCount];
+		consumed = new long[2 * personCount];
+	}
+
+	public int getPersonCount() {
+		return personCount;
+	}
+
+	public int getCurrencyCount() {
+		return currencyCount;
+	}
+
+	public Currency getCurrency(int slot) {
+		return currencies[slot];
+	}
+
+	// The rate period of the slot, see Currency.getRatePeriod()
+	public int getPeriod(int slot) {
+		return periods[slot];
+	}
+
+	// Returns the slot of the currency's base rate period, adding one if
+	// necessary.
+	public int slotOf(Currency currency) {
+		return slotOf(currency, -1);
+	}
+
+	// Returns the slot of a rate period of the currency, adding one if
+	// necessary. Currencies are told apart by identity; there are only ever
+	// a few.
+	public int slotOf(Currency currency, int period) {
+		int slot = find(currency, period);
+		if (slot >= 0)
+			return slot;
+		if (currencyCount == currencies.length) {
+			int capacity = currencies.length * 2;
+			Currency[] grownCurrencies = new Currency[capacity];
+			System.arraycopy(currencies, 0, grownCurrencies, 0, currencyCount);
+			currencies = grownCurrencies;
+			periods = grow(periods, capacity);
+			totals = grow(totals, capacity);
+			paid = grow(paid, capacity * personCount);
+			consumed = grow(consumed, capacity * personCount);
+		}
+		currencies[currencyCount] = currency;
+		periods[currencyCount] = period;
+		return currencyCount++;
+	}
+
+	// Returns the slot of a rate period of the currency, or -1 if there is
+	// none.
+	public int find(Currency currency, int period) {
+		for (int i = 0; i < currencyCount; i++)
+			if (currencies[i] == currency && periods[i] == period)
+				return i;
+		return -1;
+	}
+
+	// like Arrays.copyOf(), which API level 8 lacks
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+	private static long[] grow(long[] array, int capacity) {
+		long[] grown = new long[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	public void clear() {
+		Arrays.fill(currencies, null);
+		Arrays.fill(totals, 0);
+		Arrays.fill(paid, 0);
+		Arrays.fill(consumed, 0);
+		currencyCount = 0;
+	}
+
+	public void addTotal(int slot, long amount) {
+		totals[slot] += amount;
+	}
+	public void addPaid(int slot, int person, long amount) {
+		paid[slot * personCount + person] += amount;
+	}
+	public void addConsumed(int slot, int person, long amount) {
+		consumed[slot * personCount + person] += amount;
+	}
+
+	public long getTotal(int slot) {
+		return totals[slot];
+	}
+	public long getPaid(int slot, int person) {
+		return paid[slot * personCount + person];
+	}
+	public long getConsumed(int slot, int person) {
+		return consumed[slot * personCount + person];
+	}
+
+	// The sum of all totals in minor units of the main currency
+	public long exchangeTotal(long mainDecimalFactor) {
+		long total = 0;
+		for (int slot = 0; slot < currencyCount; slot++)
+			total += currencies[slot].exchange(totals[slot], mainDecimalFactor, periods[slot]);
+		return total;
+	}
+
+	// Stores the exchanged paid and consumed amounts of each person into the
+	// given arrays and returns the exchanged total.
+	public long exchange(long mainDecimalFactor, long[] paidResult, long[] consumedResult) {
+		Arrays.fill(paidResult, 0, personCount, 0);
+		Arrays.fill(consumedResult, 0, personCount, 0);
+		for (int slot = 0; slot < currencyCount; slot++) {
+			distribute(slot, mainDecimalFactor, paid, paidResult);
+			distribute(slot, mainDecimalFactor, consumed, consumedResult);
+		}
+		return exchangeTotal(mainDecimalFactor);
+	}
+
+	private void distribute(int slot, long mainDecimalFactor, long[] parts, long[] result) {
+		Currency currency = currencies[slot];
+		int period = periods[slot];
+		int offset = slot * personCount;
+		long sum = 0;
+		for (int i = 0; i < personCount; i++)
+			sum += parts[offset + i];
+
+		if (sum == 0) {
+			// nothing to distribute proportionally, e.g. refunds that cancel out
+			for (int i = 0; i < personCount; i++)
+				result[i] += currency.exchange(parts[offset + i], mainDecimalFactor, period);
+			return;
+		}
+
+		long exchangedSum = currency.exchange(sum, mainDecimalFactor, period);
+		long sign = sum < 0 ? -1 : 1;
+		long cumulative = 0;
+		long previous = 0;
+		for (int i = 0; i < personCount; i++) {
+			cumulative += parts[offset + i];
+			long current = Money.multiply(exchangedSum, sign * cumulative, sign * sum);
+			result[i] += current - previous;
+			previous = current;
+		}
+	}
+
+}
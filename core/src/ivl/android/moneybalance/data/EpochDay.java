@@ -0,0 +1,88 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+// Dates are stored as the number of days since 1970-01-01 in the proleptic
+// Gregorian calendar. A day has no time zone; conversions from and to
+// instants use the local midnight of the day.
+public final class EpochDay {
+
+	private static final long MILLIS_PER_DAY = 24 * 3600 * 1000;
+
+	private EpochDay() {}
+
+	// month is 1-based
+	public static int of(int year, int month, int day) {
+		// days from civil, after H. Hinnant: years start on March 1st so that
+		// the leap day is the last day of the year
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	// The day of the calendar's instant in the calendar's time zone; works
+	// for non-Gregorian calendars as well
+	public static int of(Calendar date) {
+		return fromMillis(date.getTimeInMillis(), date.getTimeZone());
+	}
+
+	public static int fromMillis(long millis, TimeZone zone) {
+		long local = millis + zone.getOffset(millis);
+		return (int) Math.floor((double) local / MILLIS_PER_DAY);
+	}
+
+	public static int today() {
+		return fromMillis(System.currentTimeMillis(), TimeZone.getDefault());
+	}
+
+	// Sets the calendar, which must be Gregorian, to local midnight of the
+	// day.
+	public static void toCalendar(int epochDay, Calendar result) {
+		int z = epochDay + 719468;
+		int era = (z >= 0 ? z : z - 146096) / 146097;
+		int dayOfEra = z - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		result.clear();
+		result.set(year, month - 1, day);
+	}
+
+	// A new Gregorian calendar at local midnight of the day
+	public static Calendar toCalendar(int epochDay) {
+		Calendar result = new GregorianCalendar();
+		toCalendar(epochDay, result);
+		return result;
+	}
+
+	// Local midnight of the day, in the default time zone
+	public static long toMillis(int epochDay) {
+		return toCalendar(epochDay).getTimeInMillis();
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Expense extends DataObject {
+
+	private final Calculation calculation;
+
+	private Person person;
+	private String title = "";
+	private long fixedAmount;
+	private Currency currency;
+	private int epochDay;
+
+	// Split weights by position of the person in the calculation, or null if
+	// the expense is split evenly. Persons past the end have weight zero.
+	private double[] weights = null;
+
+	// set while the expense is in its calculation's expense list, which then
+	// gets notified of changes
+	boolean attached = false;
+
+	public Expense(Calculation calculation) {
+		this.calculation = calculation;
+		epochDay = EpochDay.today();
+		setCurrency(calculation.getMainCurrency());
+	}
+
+	public Calculation getCalculation() {
+		return calculation;
+	}
+
+	public Person getPerson() {
+		return person;
+	}
+	public void setPerson(Person person) {
+		this.person = person;
+		calculation.expenseModified(this);
+	}
+
+	public String getTitle() {
+		return title;
+	}
+	public void setTitle(String title) {
+		this.title = title;
+		calculation.expenseModified(this);
+	}
+
+	// The amount in minor units of the expense's currency
+	public long getFixedAmount() {
+		return fixedAmount;
+	}
+	public void setFixedAmount(long fixedAmount) {
+		calculation.expenseChanging(this);
+		this.fixedAmount = fixedAmount;
+		calculation.expenseChanged(this);
+	}
+
+	public double getAmount() {
+		return Money.toDouble(fixedAmount, currency.getDecimalFactor());
+	}
+	public void setAmount(double amount) {
+		setFixedAmount(Money.toFixed(amount, currency.getDecimalFactor()));
+	}
+
+	public Currency getCurrency() {
+		return currency;
+	}
+	public void setCurrency(Currency currency) {
+		calculation.expenseChanging(this);
+		this.currency = currency;
+		calculation.expenseChanged(this);
+	}
+
+	// The amount in minor units of the main currency, at the rate valid on
+	// the expense's date
+	public long getExchangedFixedAmount() {
+		return currency.exchangeOn(epochDay, fixedAmount, getMainDecimalFactor());
+	}
+
+	public double getExchangedAmount() {
+		return Money.toDouble(getExchangedFixedAmount(), getMainDecimalFactor());
+	}
+
+	private long getMainDecimalFactor() {
+		return calculation.getMainCurrency().getDecimalFactor();
+	}
+
+	// The date in days since 1970-01-01, see EpochDay
+	public int getEpochDay() {
+		return epochDay;
+	}
+	public void setEpochDay(int epochDay) {
+		calculation.expenseChanging(this);
+		this.epochDay = epochDay;
+		calculation.expenseChanged(this);
+	}
+
+	// A new calendar at local midnight of the date
+	public Calendar getDate() {
+		return EpochDay.toCalendar(epochDay);
+	}
+	public void setDate(Calendar date) {
+		setEpochDay(EpochDay.of(date));
+	}
+
+	public double[] getWeights() {
+		return weights;
+	}
+	public void setWeights(double[] weights) {
+		this.weights = weights;
+		calculation.expenseModified(this);
+	}
+
+	public double getWeight(int personIndex) {
+		if (weights == null)
+			return 1;
+		return personIndex < weights.length ? weights[personIndex] : 0;
+	}
+
+	public Map<Long, Double> getSplitWeights() {
+		if (weights == null)
+			return null;
+		List<Person> persons = calculation.getPersons();
+		Map<Long, Double> splitWeights = new HashMap<>();
+		for (int i = 0; i < weights.length && i < persons.size(); i++)
+			if (weights[i] != 0)
+				splitWeights.put(persons.get(i).getId(), weights[i]);
+		return splitWeights;
+	}
+	public void setSplitWeights(Map<Long, Double> splitWeights) {
+		if (splitWeights == null || splitWeights.isEmpty()) {
+			setWeights(null);
+			return;
+		}
+		List<Person> persons = calculation.getPersons();
+		double[] weights = new double[persons.size()];
+		for (int i = 0; i < persons.size(); i++) {
+			Double weight = splitWeights.get(persons.get(i).getId());
+			if (weight != null)
+				weights[i] = weight;
+		}
+		setWeights(weights);
+	}
+
+	public boolean isUnevenSplit() {
+		return weights != null;
+	}
+
+	// Splits an amount among the persons of the calculation, by position. The
+	// shares add up to the amount exactly.
+	private void split(long amount, long[] result) {
+		int count = calculation.getPersons().size();
+		if (weights == null) {
+			Money.split(amount, count, result);
+		} else {
+			int weighted = Math.min(count, weights.length);
+			Money.split(amount, weights, weighted, result);
+			for (int i = weighted; i < count; i++)
+				result[i] = 0;
+		}
+	}
+
+	// Stores the share of each person of the calculation, in minor units of
+	// the expense's currency, into result. Does not allocate.
+	public void getFixedShares(long[] result) {
+		split(fixedAmount, result);
+	}
+	// Same as getFixedShares(), in minor units of the main currency
+	public void getExchangedFixedShares(long[] result) {
+		split(getExchangedFixedAmount(), result);
+	}
+
+	public List<Double> getShares(List<Person> persons) {
+		long[] shares = new long[calculation.getPersons().size()];
+		getFixedShares(shares);
+		return toDoubles(persons, shares, currency.getDecimalFactor());
+	}
+	public List<Double> getExchangedShares(List<Person> persons) {
+		long[] shares = new long[calculation.getPersons().size()];
+		getExchangedFixedShares(shares);
+		return toDoubles(persons, shares, getMainDecimalFactor());
+	}
+
+	private List<Double> toDoubles(List<Person> persons, long[] shares, long decimalFactor) {
+		boolean byPosition = (persons == calculation.getPersons());
+		List<Double> result = new ArrayList<>(persons.size());
+		for (int i = 0; i < persons.size(); i++) {
+			int index = byPosition ? i : calculation.getPersonIndex(persons.get(i).getId());
+			result.add(index < 0 ? 0.0 : Money.toDouble(shares[index], decimalFactor));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,314 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The expenses of a calculation as parallel arrays, one per field, for
+// read-only passes over large calculations. Payers and currencies are stored
+// by position; the weights of unevenly split rows share one array, each row
+// taking a slice of one weight per person. A table is a snapshot and does not
+// follow later changes of the calculation.
+public class ExpenseTable {
+
+	private final Calculation calculation;
+	private final int personCount;
+	private final List<Currency> currencies;
+	private final int modificationCount;
+	private final int rateChangeCount;
+
+	private int size = 0;
+	private long[] ids;
+	private int[] payers;
+	private String[] titles;
+	private long[] amounts;
+	private int[] currencyIndexes;
+	private int[] days;
+	// offset of the row's weights, or -1 if the row is split evenly
+	private int[] weightOffsets;
+	private double[] weights = new double[0];
+	private int weightsUsed = 0;
+
+	public ExpenseTable(Calculation calculation, int capacity) {
+		this.calculation = calculation;
+		personCount = calculation.getPersonCount();
+		currencies = new ArrayList<>(calculation.getCurrencies());
+		modificationCount = calculation.getModificationCount();
+		rateChangeCount = calculation.getRateChangeCount();
+
+		capacity = Math.max(capacity, 4);
+		ids = new long[capacity];
+		payers = new int[capacity];
+		titles = new String[capacity];
+		amounts = new long[capacity];
+		currencyIndexes = new int[capacity];
+		days = new int[capacity];
+		weightOffsets = new int[capacity];
+	}
+
+	public static ExpenseTable of(Calculation calculation) {
+		List<Expense> expenses = calculation.getExpenses();
+		ExpenseTable table = new ExpenseTable(calculation, expenses.size());
+		for (Expense expense : expenses) {
+			Person person = expense.getPerson();
+			int payer = person == null ? -1 : calculation.getPersonIndex(person.getId());
+			int row = table.add(expense.getId(), payer, expense.getTitle(), expense.getFixedAmount(),
+					table.indexOf(expense.getCurrency()), expense.getEpochDay());
+			double[] expenseWeights = expense.getWeights();
+			if (expenseWeights != null) {
+				for (int i = 0; i < expenseWeights.length && i < table.personCount; i++)
+					table.setWeight(row, i, expenseWeights[i]);
+			}
+		}
+		return table;
+	}
+
+	// Mostly the position in the calculation, except for currencies that are
+	// not part of it, which are appended
+	private int indexOf(Currency currency) {
+		if (currency == null)
+			return -1;
+		int index = calculation.getCurrencyIndex(currency.getId());
+		if (index >= 0 && index < currencies.size() && currencies.get(index) == currency)
+			return index;
+		for (int i = 0; i < currencies.size(); i++)
+			if (currencies.get(i) == currency)
+				return i;
+		currencies.add(currency);
+		return currencies.size() - 1;
+	}
+
+	// Appends a row, split evenly until weights are set. payer and currency
+	// are positions in the calculation, or -1 if unknown. Returns the row.
+	public int add(long id, int payer, String title, long fixedAmount, int currency, int epochDay) {
+		if (size == ids.length)
+			grow();
+		ids[size] = id;
+		payers[size] = payer;
+		titles[size] = title;
+		amounts[size] = fixedAmount;
+		currencyIndexes[size] = currency;
+		days[size] = epochDay;
+		weightOffsets[size] = -1;
+		return size++;
+	}
+
+	public void setWeight(int row, int personIndex, double weight) {
+		if (weightOffsets[row] < 0) {
+			if (weightsUsed + personCount > weights.length)
+				weights = grow(weights, Math.max(weightsUsed + personCount, weights.length * 2));
+			weightOffsets[row] = weightsUsed;
+			Arrays.fill(weights, weightsUsed, weightsUsed + personCount, 0);
+			weightsUsed += personCount;
+		}
+		weights[weightOffsets[row] + personIndex] = weight;
+	}
+
+	private void grow() {
+		int capacity = ids.length * 2;
+		ids = grow(ids, capacity);
+		payers = grow(payers, capacity);
+		titles = grow(titles, capacity);
+		amounts = grow(amounts, capacity);
+		currencyIndexes = grow(currencyIndexes, capacity);
+		days = grow(days, capacity);
+		weightOffsets = grow(weightOffsets, capacity);
+	}
+
+	// Arrays.copyOf() is not available before API level 9
+	private static long[] grow(long[] array, int capacity) {
+		long[] grown = new long[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+	private static double[] grow(double[] array, int capacity) {
+		double[] grown = new double[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+	private static String[] grow(String[] array, int capacity) {
+		String[] grown = new String[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	public Calculation getCalculation() {
+		return calculation;
+	}
+
+	// Calculation.getModificationCount() at the time the table was created
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
+	int getRateChangeCount() {
+		return rateChangeCount;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getPersonCount() {
+		return personCount;
+	}
+
+	public long getId(int row) {
+		return ids[row];
+	}
+
+	public int getPayer(int row) {
+		return payers[row];
+	}
+
+	public Person getPerson(int row) {
+		int payer = payers[row];
+		return payer < 0 ? null : calculation.getPerson(payer);
+	}
+
+	public String getTitle(int row) {
+		return titles[row];
+	}
+
+	// The amount in minor units of the row's currency
+	public long getFixedAmount(int row) {
+		return amounts[row];
+	}
+
+	// The currencies the rows refer to: those of the calculation, by
+	// position, and possibly others
+	public int getCurrencyCount() {
+		return currencies.size();
+	}
+	public Currency getCurrencyAt(int index) {
+		return currencies.get(index);
+	}
+
+	public int getCurrencyIndex(int row) {
+		return currencyIndexes[row];
+	}
+
+	public Currency getCurrency(int row) {
+		int currency = currencyIndexes[row];
+		return currency < 0 ? null : currencies.get(currency);
+	}
+
+	// The amount in minor units of the main currency, at the rate valid on
+	// the row's date; zero if the currency is unknown
+	public long getExchangedFixedAmount(int row) {
+		int currency = currencyIndexes[row];
+		if (currency < 0)
+			return 0;
+		return currencies.get(currency).exchangeOn(days[row], amounts[row], calculation.getMainCurrency().getDecimalFactor());
+	}
+
+	public int getEpochDay(int row) {
+		return days[row];
+	}
+
+	public boolean isUnevenSplit(int row) {
+		return weightOffsets[row] >= 0;
+	}
+
+	public double getWeight(int row, int personIndex) {
+		int offset = weightOffsets[row];
+		return offset < 0 ? 1 : weights[offset + personIndex];
+	}
+
+	// Splits an amount of the row among the persons, like
+	// Expense.getFixedShares(). Does not allocate.
+	public void split(int row, long amount, long[] result) {
+		int offset = weightOffsets[row];
+		if (offset < 0)
+			Money.split(amount, personCount, result);
+		else
+			Money.split(amount, weights, offset, personCount, result);
+	}
+
+	// The rows ordered by date; rows of the same day keep their order.
+	public int[] getRowsByDate() {
+		long[] keys = new long[size];
+		for (int row = 0; row < size; row++)
+			keys[row] = ((long) days[row] << 32) | row;
+		Arrays.sort(keys);
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++)
+			rows[i] = (int) keys[i];
+		return rows;
+	}
+
+	public Row newRow() {
+		return new Row();
+	}
+
+	// A view of one row with the getters of an expense. Moving a single view
+	// over many rows allocates nothing per row.
+	public class Row {
+
+		private int row;
+
+		private Row() {}
+
+		public Row moveTo(int row) {
+			this.row = row;
+			return this;
+		}
+
+		public int getPosition() {
+			return row;
+		}
+		public long getId() {
+			return ids[row];
+		}
+		public Person getPerson() {
+			return ExpenseTable.this.getPerson(row);
+		}
+		public String getTitle() {
+			return titles[row];
+		}
+		public long getFixedAmount() {
+			return amounts[row];
+		}
+		public double getAmount() {
+			Currency currency = getCurrency();
+			return Money.toDouble(amounts[row], currency.getDecimalFactor());
+		}
+		public Currency getCurrency() {
+			return ExpenseTable.this.getCurrency(row);
+		}
+		public long getExchangedFixedAmount() {
+			return ExpenseTable.this.getExchangedFixedAmount(row);
+		}
+		public int getEpochDay() {
+			return days[row];
+		}
+		public boolean isUnevenSplit() {
+			return weightOffsets[row] >= 0;
+		}
+		public double getWeight(int personIndex) {
+			return ExpenseTable.this.getWeight(row, personIndex);
+		}
+	}
+
+}
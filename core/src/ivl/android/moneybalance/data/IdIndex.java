@@ -0,0 +1,73 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Maps object ids to their positions in a list, using open addressing on
+// primitive keys so lookups neither box nor allocate. The index is a cache:
+// callers rebuild it whenever the list or an id in it has changed.
+class IdIndex {
+
+	private long[] keys = new long[0];
+	private int[] positions = new int[0];
+	private int mask;
+
+	void rebuild(List<? extends DataObject> objects) {
+		int capacity = 4;
+		while (capacity < objects.size() * 2)
+			capacity <<= 1;
+		if (keys.length != capacity) {
+			keys = new long[capacity];
+			positions = new int[capacity];
+			mask = capacity - 1;
+		}
+		Arrays.fill(positions, -1);
+
+		for (int i = 0; i < objects.size(); i++) {
+			long id = objects.get(i).getId();
+			int slot = slot(id);
+			while (positions[slot] >= 0 && keys[slot] != id)
+				slot = (slot + 1) & mask;
+			// on duplicate ids the first object wins, as with a linear search
+			if (positions[slot] < 0) {
+				keys[slot] = id;
+				positions[slot] = i;
+			}
+		}
+	}
+
+	// Returns the position of the id, or -1 if it is not indexed.
+	int get(long id) {
+		if (keys.length == 0)
+			return -1;
+		int slot = slot(id);
+		while (positions[slot] >= 0) {
+			if (keys[slot] == id)
+				return positions[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int slot(long id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.math.BigInteger;
+
+// Fixed-point arithmetic on amounts stored as longs in minor currency units
+// (e.g. cents). Results are rounded half away from zero. None of the methods
+// allocate unless an intermediate product exceeds the range of a long.
+public final class Money {
+
+	private Money() {}
+
+	public static long getDecimalFactor(String currencyCode) {
+		java.util.Currency jc = java.util.Currency.getInstance(currencyCode);
+		long factor = 1;
+		for (int i = 0; i < jc.getDefaultFractionDigits(); i++)
+			factor *= 10;
+		return factor;
+	}
+
+	public static long toFixed(double amount, long decimalFactor) {
+		return Math.round(amount * decimalFactor);
+	}
+
+	public static double toDouble(long fixedAmount, long decimalFactor) {
+		return (double) fixedAmount / decimalFactor;
+	}
+
+	// Returns dividend / divisor, rounded; divisor must be positive.
+	public static long divide(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = Math.abs(dividend % divisor);
+		if (remainder >= divisor - remainder)
+			quotient += (dividend < 0 ? -1 : 1);
+		return quotient;
+	}
+
+	// Returns value * numerator / denominator, rounded; denominator must be
+	// positive.
+	public static long multiply(long value, long numerator, long denominator) {
+		if (value == 0 || numerator == 0)
+			return 0;
+		if (value != Long.MIN_VALUE && numerator != Long.MIN_VALUE &&
+				Math.abs(value) <= Long.MAX_VALUE / Math.abs(numerator))
+			return divide(value * numerator, denominator);
+
+		BigInteger[] qr = BigInteger.valueOf(value).multiply(BigInteger.valueOf(numerator))
+				.divideAndRemainder(BigInteger.valueOf(denominator));
+		long quotient = qr[0].longValue();
+		BigInteger twice = qr[1].abs().shiftLeft(1);
+		if (twice.compareTo(BigInteger.valueOf(denominator)) >= 0)
+			quotient += qr[1].signum() < 0 ? -1 : 1;
+		return quotient;
+	}
+
+	public static long gcd(long a, long b) {
+		a = Math.abs(a);
+		b = Math.abs(b);
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	// Splits an amount into count equal parts. The parts differ by at most one
+	// minor unit and add up to the amount exactly.
+	public static void split(long amount, int count, long[] result) {
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			long current = multiply(amount, i + 1, count);
+			result[i] = current - previous;
+			previous = current;
+		}
+	}
+
+	// Splits an amount proportionally to the given non-negative weights. Each
+	// part is within one minor unit of its exact value, and the parts add up
+	// to the amount exactly.
+	public static void split(long amount, double[] weights, int count, long[] result) {
+		split(amount, weights, 0, count, result);
+	}
+
+	// Same as above, with the weights starting at the given offset
+	public static void split(long amount, double[] weights, int offset, int count, long[] result) {
+		double totalWeight = 0;
+		for (int i = 0; i < count; i++)
+			totalWeight += weights[offset + i];
+
+		long previous = 0;
+		double cumulativeWeight = 0;
+		for (int i = 0; i < count; i++) {
+			double weight = weights[offset + i];
+			long current = previous;
+			if (weight > 0) {
+				cumulativeWeight += weight;
+				if (cumulativeWeight >= totalWeight)
+					current = amount;
+				else
+					current = Math.round(amount * cumulativeWeight / totalWeight);
+			}
+			result[i] = current - previous;
+			previous = current;
+		}
+	}
+
+}
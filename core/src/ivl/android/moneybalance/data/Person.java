@@ -29,6 +29,12 @@ public class Person extends DataObject {
 		return calculation;
 	}
 
+	@Override
+	public void setId(long id) {
+		super.setId(id);
+		calculation.personIdChanged();
+	}
+
 	public String getName() {
 		return name;
 	}
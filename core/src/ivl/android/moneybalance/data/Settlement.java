@@ -0,0 +1,163 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Computes a plan of transfers that settles a set of net balances, given in
+// minor units and adding up to zero. Positive balances receive money.
+//
+// Groups of up to MAX_EXACT_PERSONS non-zero balances are solved exactly: the
+// minimum number of transfers is the number of persons minus the maximum
+// number of disjoint zero-sum subsets, found by a DP over all subsets. Larger
+// groups, or runs that exceed the time budget, fall back to greedily matching
+// the largest debtor with the largest creditor, which needs at most n-1
+// transfers. Both are deterministic for a given input.
+public class Settlement {
+
+	public static final int MAX_EXACT_PERSONS = 18;
+
+	public static class Transfer {
+		private final int from;
+		private final int to;
+		private final long amount;
+
+		Transfer(int from, int to, long amount) {
+			this.from = from;
+			this.to = to;
+			this.amount = amount;
+		}
+
+		// positions of the paying and the receiving person
+		public int getFrom() {
+			return from;
+		}
+		public int getTo() {
+			return to;
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+	}
+
+	private Settlement() {}
+
+	public static List<Transfer> settle(long[] net, long timeBudgetMillis) {
+		int count = 0;
+		for (long value : net)
+			if (value != 0)
+				count++;
+
+		int[] persons = new int[count];
+		count = 0;
+		for (int i = 0; i < net.length; i++)
+			if (net[i] != 0)
+				persons[count++] = i;
+
+		List<Transfer> transfers = new ArrayList<>();
+		if (count <= MAX_EXACT_PERSONS) {
+			if (settleExact(net, persons, timeBudgetMillis * 1000000, transfers))
+				return transfers;
+			transfers.clear();
+		}
+		settleGreedy(net, persons, count, transfers);
+		return transfers;
+	}
+
+	public static List<Transfer> settle(long[] net) {
+		return settle(net, Long.MAX_VALUE / 1000000);
+	}
+
+	private static boolean settleExact(long[] net, int[] persons, long budgetNanos, List<Transfer> transfers) {
+		long start = System.nanoTime();
+		int n = persons.length;
+		int full = (1 << n) - 1;
+		long[] sums = new long[full + 1];
+		byte[] groups = new byte[full + 1];
+
+		// groups[mask]: maximum number of zero-sum groups the removal of the
+		// persons in mask, one at a time, can pass through
+		for (int mask = 1; mask <= full; mask++) {
+			if ((mask & 0xfff) == 0 && System.nanoTime() - start > budgetNanos)
+				return false;
+			int low = Integer.numberOfTrailingZeros(mask);
+			sums[mask] = sums[mask & (mask - 1)] + net[persons[low]];
+			int best = 0;
+			for (int rest = mask; rest != 0; rest &= rest - 1) {
+				int without = mask & ~Integer.lowestOneBit(rest);
+				if (groups[without] > best)
+					best = groups[without];
+			}
+			groups[mask] = (byte) (best + (sums[mask] == 0 ? 1 : 0));
+		}
+
+		// walk back from the full set, splitting off one zero-sum group at a
+		// time, and settle each group on its own
+		int[] group = new int[n];
+		int size = 0;
+		int mask = full;
+		while (mask != 0) {
+			int step = groups[mask] - (sums[mask] == 0 ? 1 : 0);
+			int chosen = -1;
+			for (int rest = mask; rest != 0; rest &= rest - 1) {
+				int bit = Integer.numberOfTrailingZeros(rest);
+				if (groups[mask & ~(1 << bit)] == step) {
+					chosen = bit;
+					break;
+				}
+			}
+			group[size++] = persons[chosen];
+			mask &= ~(1 << chosen);
+			if (sums[mask] == 0) {
+				settleGreedy(net, group, size, transfers);
+				size = 0;
+			}
+		}
+		return true;
+	}
+
+	// Repeatedly lets the largest debtor pay the largest creditor. Ties go to
+	// the lower position.
+	private static void settleGreedy(long[] net, int[] persons, int count, List<Transfer> transfers) {
+		long[] balance = new long[count];
+		for (int i = 0; i < count; i++)
+			balance[i] = net[persons[i]];
+
+		while (true) {
+			int debtor = -1;
+			int creditor = -1;
+			for (int i = 0; i < count; i++) {
+				if (balance[i] < 0 && (debtor < 0 || balance[i] < balance[debtor] ||
+						(balance[i] == balance[debtor] && persons[i] < persons[debtor])))
+					debtor = i;
+				if (balance[i] > 0 && (creditor < 0 || balance[i] > balance[creditor] ||
+						(balance[i] == balance[creditor] && persons[i] < persons[creditor])))
+					creditor = i;
+			}
+			if (debtor < 0 || creditor < 0)
+				break;
+
+			long amount = Math.min(-balance[debtor], balance[creditor]);
+			transfers.add(new Transfer(persons[debtor], persons[creditor], amount));
+			balance[debtor] += amount;
+			balance[creditor] -= amount;
+		}
+	}
+
+}
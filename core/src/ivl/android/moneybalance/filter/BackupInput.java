@@ -0,0 +1,120 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.filter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Reads the binary backup format written by BackupOutput.
+public class BackupInput {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream in;
+	private final Inflater inflater = new Inflater();
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	// Checks the magic bytes and format version; throws an IOException if the
+	// stream is not a backup or was written by a newer version.
+	public BackupInput(InputStream stream) throws IOException {
+		for (byte b : BackupOutput.MAGIC) {
+			if (stream.read() != b)
+				throw new IOException("Not a backup file");
+		}
+		int version = stream.read();
+		if (version < 1 || version > BackupOutput.FORMAT_VERSION)
+			throw new IOException("Unsupported backup format version " + version);
+		in = new InflaterInputStream(stream, inflater, BUFFER_SIZE);
+	}
+
+	public long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = readByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	public int readVarInt() throws IOException {
+		long value = readVarLong();
+		if (value > Integer.MAX_VALUE)
+			throw new IOException("Value out of range: " + value);
+		return (int) value;
+	}
+
+	public long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public double readDouble() throws IOException {
+		long bits = 0;
+		for (int i = 0; i < 8; i++)
+			bits |= (long) (readByte() & 0xff) << (8 * i);
+		return Double.longBitsToDouble(bits);
+	}
+
+	public double readWeight() throws IOException {
+		long tag = readVarLong();
+		if ((tag & 1) == 0)
+			return tag >>> 1;
+		return readDouble();
+	}
+
+	public String readString() throws IOException {
+		int length = readVarInt();
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			if (position == limit)
+				fill();
+			int count = Math.min(length - offset, limit - position);
+			System.arraycopy(buffer, position, bytes, offset, count);
+			position += count;
+			offset += count;
+		}
+		return new String(bytes, "UTF-8");
+	}
+
+	// Releases the inflater; the underlying stream is not closed.
+	public void end() {
+		inflater.end();
+	}
+
+	private byte readByte() throws IOException {
+		if (position == limit)
+			fill();
+		return buffer[position++];
+	}
+
+	private void fill() throws IOException {
+		int count = in.read(buffer, 0, BUFFER_SIZE);
+		if (count <= 0)
+			throw new EOFException("Unexpected end of backup");
+		position = 0;
+		limit = count;
+	}
+
+}
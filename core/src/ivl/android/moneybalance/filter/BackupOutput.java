@@ -0,0 +1,108 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.filter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Writes the binary backup format. A backup starts with the uncompressed
+// magic bytes and format version; everything after that is deflated. Numbers
+// are stored as base-128 varints, signed ones zigzag encoded so that small
+// deltas of either sign stay short. Callers write ids, amounts and dates as
+// deltas from the previous row to keep them small.
+public class BackupOutput {
+
+	public static final byte[] MAGIC = { 'M', 'B', 'B', 'K' };
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OutputStream out;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+
+	public BackupOutput(OutputStream stream) throws IOException {
+		stream.write(MAGIC);
+		stream.write(FORMAT_VERSION);
+		out = new DeflaterOutputStream(stream, deflater, BUFFER_SIZE);
+	}
+
+	public void writeVarLong(long value) throws IOException {
+		if (position > BUFFER_SIZE - 10)
+			flushBuffer();
+		while ((value & ~0x7fL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+
+	public void writeSignedVarLong(long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	public void writeDouble(double value) throws IOException {
+		long bits = Double.doubleToLongBits(value);
+		if (position > BUFFER_SIZE - 8)
+			flushBuffer();
+		for (int i = 0; i < 8; i++) {
+			buffer[position++] = (byte) bits;
+			bits >>>= 8;
+		}
+	}
+
+	// Split weights are mostly small whole numbers, which take one byte;
+	// anything else is tagged and stored as a full double.
+	public void writeWeight(double weight) throws IOException {
+		long whole = (long) weight;
+		if (whole == weight && whole >= 0 && whole < (1L << 60)) {
+			writeVarLong(whole << 1);
+		} else {
+			writeVarLong(1);
+			writeDouble(weight);
+		}
+	}
+
+	public void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		writeVarLong(bytes.length);
+		if (bytes.length > BUFFER_SIZE - position) {
+			flushBuffer();
+			out.write(bytes);
+		} else {
+			System.arraycopy(bytes, 0, buffer, position, bytes.length);
+			position += bytes.length;
+		}
+	}
+
+	// Finishes the compressed stream; the underlying stream is not closed.
+	public void finish() throws IOException {
+		flushBuffer();
+		((DeflaterOutputStream) out).finish();
+		deflater.end();
+		out.flush();
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+
+}
@@ -0,0 +1,402 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Currency;
+import ivl.android.moneybalance.data.EpochDay;
+import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.Person;
+
+// Reads expenses from CSV, one row at a time. Understands the layout written
+// by CsvOutput as well as plain "date, payer, title, currency, amount,
+// weights..." sheets. The parser is forgiving: the separator (comma,
+// semicolon or tab) is detected, a byte order mark is skipped, both decimal
+// points and commas are accepted, and rows that are not expenses (titles,
+// headings, totals) are ignored. Expense rows naming an unknown payer or
+// currency, or with an unreadable amount, are skipped and counted.
+public class CsvInput {
+
+	private static final int DATE = 0;
+	private static final int PAYER = 1;
+	private static final int TITLE = 2;
+	private static final int CURRENCY = 3;
+	private static final int AMOUNT = 4;
+	private static final int WEIGHTS = 5;
+	// main currency and exchanged amount in the multi-currency layout, used
+	// when the local currency cell is empty
+	private static final int MAIN_CURRENCY = 6;
+	private static final int EXCHANGED_AMOUNT = 7;
+
+	private static final long INVALID = Long.MIN_VALUE;
+	private static final long WEIGHT_FACTOR = 1000000;
+
+	private final Calculation calculation;
+	private final Reader in;
+
+	private final Map<String, Person> personsByName = new HashMap<>();
+	private final Map<String, Currency> currenciesByCode = new HashMap<>();
+	private final int personCount;
+
+	// person index of each weight column; positional until a heading row
+	// with person names is seen
+	private int[] weightPersons;
+	private int firstWeightColumn = WEIGHTS;
+
+	private final List<String> cells = new ArrayList<>();
+	private final StringBuilder cell = new StringBuilder();
+	private int epochDay;
+	private char separator = 0;
+	private int pushback = -1;
+	private boolean first = true;
+
+	private int line = 0;
+	private int expenseCount = 0;
+	private int skippedCount = 0;
+	private int firstSkippedLine = 0;
+
+	public CsvInput(Calculation calculation, Reader reader) {
+		this.calculation = calculation;
+		in = (reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+
+		List<Person> persons = calculation.getPersons();
+		personCount = persons.size();
+		for (Person person : persons) {
+			String name = person.getName().trim();
+			personsByName.put(name, person);
+			String key = name.toLowerCase(Locale.ENGLISH);
+			if (!personsByName.containsKey(key))
+				personsByName.put(key, person);
+		}
+		for (Currency currency : calculation.getCurrencies())
+			currenciesByCode.put(currency.getCurrencyCode().toUpperCase(Locale.ENGLISH), currency);
+
+		weightPersons = new int[personCount];
+		for (int i = 0; i < personCount; i++)
+			weightPersons[i] = i;
+	}
+
+	// Returns the next expense, or null at the end of the input. The expense
+	// belongs to the calculation but is not added to its expense list.
+	public Expense read() throws IOException {
+		while (readRecord()) {
+			Expense expense = parseExpense();
+			if (expense != null) {
+				expenseCount++;
+				return expense;
+			}
+		}
+		return null;
+	}
+
+	public int getExpenseCount() {
+		return expenseCount;
+	}
+
+	// expense rows that could not be imported
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+
+	// line number of the first skipped row, 0 if none was skipped
+	public int getFirstSkippedLine() {
+		return firstSkippedLine;
+	}
+
+	private Expense parseExpense() {
+		if (!parseDate(get(DATE))) {
+			parseHeadings();
+			return null;
+		}
+
+		Person payer = findPerson(get(PAYER));
+		String code = get(CURRENCY);
+		String amount = get(AMOUNT);
+		if (code.length() == 0 && amount.length() == 0) {
+			code = get(MAIN_CURRENCY);
+			amount = get(EXCHANGED_AMOUNT);
+		}
+		Currency currency = (code.length() == 0 ? calculation.getMainCurrency() : findCurrency(code));
+		if (payer == null || currency == null)
+			return skip();
+
+		long fixedAmount = parseFixed(amount, currency.getDecimalFactor());
+		if (fixedAmount == INVALID)
+			return skip();
+
+		Expense expense = new Expense(calculation);
+		expense.setPerson(payer);
+		expense.setTitle(get(TITLE));
+		expense.setCurrency(currency);
+		expense.setFixedAmount(fixedAmount);
+		expense.setEpochDay(epochDay);
+		expense.setWeights(parseWeights());
+		return expense;
+	}
+
+	private Expense skip() {
+		skippedCount++;
+		if (firstSkippedLine == 0)
+			firstSkippedLine = line;
+		return null;
+	}
+
+	// A row without a date that names persons is taken as the heading row
+	// and tells which column holds whose weight. CsvOutput repeats the names
+	// above the share columns, so only the first run of names counts.
+	private void parseHeadings() {
+		if (get(DATE).length() != 0)
+			return;
+
+		List<Person> persons = calculation.getPersons();
+		int[] columns = new int[personCount];
+		boolean[] seen = new boolean[personCount];
+		int start = -1;
+		int count = 0;
+		for (int column = TITLE + 1; column < cells.size(); column++) {
+			Person person = findPerson(cells.get(column));
+			if (person == null && start < 0)
+				continue;
+			if (person == null || seen[persons.indexOf(person)])
+				break;
+			if (start < 0)
+				start = column;
+			int index = persons.indexOf(person);
+			seen[index] = true;
+			columns[count++] = index;
+		}
+
+		if (start >= 0) {
+			firstWeightColumn = start;
+			weightPersons = new int[count];
+			System.arraycopy(columns, 0, weightPersons, 0, count);
+		}
+	}
+
+	// Returns null for an even split: no weights given, all of them zero, or
+	// everybody with the same weight.
+	private double[] parseWeights() {
+		double[] weights = null;
+		for (int i = 0; i < weightPersons.length; i++) {
+			String text = get(firstWeightColumn + i);
+			if (text.length() == 0 || text.startsWith("="))
+				continue;
+			long weight = parseFixed(text, WEIGHT_FACTOR);
+			if (weight == INVALID || weight < 0)
+				continue;
+			if (weights == null)
+				weights = new double[personCount];
+			weights[weightPersons[i]] = (double) weight / WEIGHT_FACTOR;
+		}
+		if (weights == null)
+			return null;
+
+		double firstWeight = weights[0];
+		boolean even = true;
+		for (double weight : weights)
+			even &= (weight == firstWeight);
+		return even ? null : weights;
+	}
+
+	private Person findPerson(String name) {
+		if (name.length() == 0)
+			return null;
+		Person person = personsByName.get(name);
+		if (person == null)
+			person = personsByName.get(name.toLowerCase(Locale.ENGLISH));
+		return person;
+	}
+
+	private Currency findCurrency(String code) {
+		return currenciesByCode.get(code.toUpperCase(Locale.ENGLISH));
+	}
+
+	private String get(int column) {
+		return column < cells.size() ? cells.get(column) : "";
+	}
+
+	// Accepts yyyy-mm-dd (also with '/' or '.') and dd.mm.yyyy.
+	private boolean parseDate(String text) {
+		int[] parts = new int[3];
+		int part = 0;
+		int digits = 0;
+		int firstDigits = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (++digits > 4)
+					return false;
+				parts[part] = parts[part] * 10 + (c - '0');
+			} else if ((c == '-' || c == '/' || c == '.') && digits > 0 && part < 2) {
+				if (part == 0)
+					firstDigits = digits;
+				part++;
+				digits = 0;
+			} else {
+				return false;
+			}
+		}
+		if (part != 2 || digits == 0)
+			return false;
+
+		int year, month, day;
+		if (firstDigits == 4) {
+			year = parts[0]; month = parts[1]; day = parts[2];
+		} else if (digits == 4) {
+			day = parts[0]; month = parts[1]; year = parts[2];
+		} else {
+			return false;
+		}
+		if (month < 1 || month > 12 || day < 1 || day > 31)
+			return false;
+
+		epochDay = EpochDay.of(year, month, day);
+		return true;
+	}
+
+	// Parses a decimal number into units of 1/decimalFactor, rounding half
+	// away from zero. If both '.' and ',' occur, the last one is the decimal
+	// separator and the other one groups digits; a lone ',' is a decimal
+	// separator. Spaces and apostrophes are ignored as grouping.
+	static long parseFixed(String text, long decimalFactor) {
+		int decimalPoint = Math.max(text.lastIndexOf('.'), text.lastIndexOf(','));
+		if (decimalPoint >= 0 && text.indexOf(text.charAt(decimalPoint)) != decimalPoint)
+			decimalPoint = -1; // repeated, so it groups digits
+
+		boolean negative = false;
+		boolean anyDigit = false;
+		long integer = 0;
+		long fraction = 0;
+		long scale = 1;
+		boolean roundUp = false;
+		boolean roundDone = false;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				anyDigit = true;
+				if (decimalPoint < 0 || i < decimalPoint) {
+					if (integer > (Long.MAX_VALUE / 10 - 9) / decimalFactor)
+						return INVALID;
+					integer = integer * 10 + (c - '0');
+				} else if (scale < decimalFactor) {
+					fraction = fraction * 10 + (c - '0');
+					scale *= 10;
+				} else if (!roundDone) {
+					roundUp = (c >= '5');
+					roundDone = true;
+				}
+			} else if (c == '-' && !anyDigit && !negative) {
+				negative = true;
+			} else if (c == '+' && !anyDigit) {
+				continue;
+			} else if (c == '.' || c == ',' || c == ' ' || c == '\'' || c == '\u00A0') {
+				continue;
+			} else {
+				return INVALID;
+			}
+		}
+		if (!anyDigit)
+			return INVALID;
+
+		long result = integer * decimalFactor + fraction * (decimalFactor / scale);
+		if (roundUp)
+			result++;
+		return negative ? -result : result;
+	}
+
+	// Reads the next record into cells, returning false at the end of input.
+	private boolean readRecord() throws IOException {
+		cells.clear();
+		cell.setLength(0);
+		line++;
+
+		int c = next();
+		if (c < 0)
+			return false;
+		if (first) {
+			first = false;
+			if (c == '\uFEFF')
+				c = next();
+		}
+
+		boolean quoted = false;
+		boolean wasQuoted = false;
+		while (c >= 0) {
+			if (quoted) {
+				if (c == '"') {
+					c = next();
+					if (c != '"') {
+						quoted = false;
+						continue;
+					}
+				} else if (c == '\n') {
+					line++;
+				}
+				cell.append((char) c);
+			} else if (c == '"' && cell.length() == 0 && !wasQuoted) {
+				quoted = true;
+				wasQuoted = true;
+			} else if (c == '\r' || c == '\n') {
+				if (c == '\r') {
+					c = next();
+					if (c != '\n')
+						pushback = c;
+				}
+				break;
+			} else if (isSeparator((char) c)) {
+				endCell(wasQuoted);
+				wasQuoted = false;
+			} else {
+				cell.append((char) c);
+			}
+			c = next();
+		}
+		endCell(wasQuoted);
+		return true;
+	}
+
+	private boolean isSeparator(char c) {
+		if (separator == 0 && (c == ',' || c == ';' || c == '\t'))
+			separator = c;
+		return c == separator;
+	}
+
+	private void endCell(boolean wasQuoted) {
+		cells.add(wasQuoted ? cell.toString() : cell.toString().trim());
+		cell.setLength(0);
+	}
+
+	private int next() throws IOException {
+		if (pushback != -1) {
+			int c = pushback;
+			pushback = -1;
+			return c;
+		}
+		return in.read();
+	}
+
+}
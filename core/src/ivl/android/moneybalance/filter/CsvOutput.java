@@ -0,0 +1,352 @@
+package ivl.android.moneybalance.filter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+
+import ivl.android.moneybalance.CurrencyHelper;
+import ivl.android.moneybalance.DateHelper;
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Currency;
+import ivl.android.moneybalance.data.ExpenseTable;
+import ivl.android.moneybalance.data.Person;
+
+// Writes a calculation as CSV with spreadsheet formulas for the shares and
+// totals. Rows are streamed to the writer one at a time from the columns of
+// an expense table; column names and the constant parts of the formulas are
+// computed once up front.
+public class CsvOutput {
+
+	public interface ProgressListener {
+		// Called after every PROGRESS_INTERVAL expense rows and after the last
+		// one. Returning false cancels the output.
+		boolean onProgress(int expensesWritten, int expenseCount);
+	}
+
+	public static final int PROGRESS_INTERVAL = 500;
+
+	private final Calculation calculation;
+	private final List<Person> persons;
+	private final boolean multiCurrency;
+
+	private final CurrencyHelper helper;
+	private final long mainDecimalFactor;
+	// reused for formatting amounts
+	private final StringBuilder cell = new StringBuilder();
+	private char[] cellChars = new char[32];
+	private final DateHelper dateHelper = new DateHelper(new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()));
+
+	private final ExpenseTable expenses;
+	// ordered by date; expenses of a day keep their order
+	private final int[] rowsByDate;
+
+	// column names ("A", "B", ...) of the amount and weight columns, and the
+	// leading separators of the summary rows
+	private final String exchangedAmountColumn;
+	private final String[] weightColumns;
+	private final String[] shareColumns;
+	private final String leadingCells;
+	private final String evenWeight;
+
+	private ProgressListener progressListener;
+
+	private Writer out;
+	private int row;
+
+	public CsvOutput(Calculation calculation) {
+		this(ExpenseTable.of(calculation));
+	}
+
+	public CsvOutput(ExpenseTable expenses) {
+		this.expenses = expenses;
+		calculation = expenses.getCalculation();
+		persons = calculation.getPersons();
+		multiCurrency = (calculation.getCurrencies().size() > 1);
+
+		helper = CurrencyHelper.get(calculation.getMainCurrencyCode(), Locale.ENGLISH, false);
+		mainDecimalFactor = calculation.getMainCurrency().getDecimalFactor();
+
+		rowsByDate = expenses.getRowsByDate();
+
+		exchangedAmountColumn = column(exchangedAmountColumn());
+		weightColumns = new String[persons.size()];
+		shareColumns = new String[persons.size()];
+		for (int i = 0; i < persons.size(); i++) {
+			weightColumns[i] = column(firstWeightColumn() + i);
+			shareColumns[i] = column(firstShareColumn() + i);
+		}
+
+		StringBuilder leading = new StringBuilder(multiCurrency ? ",,,,,,," : ",,,,");
+		for (int i = 0; i < persons.size(); i++)
+			leading.append(',');
+		leadingCells = leading.toString();
+		evenWeight = helper.format(1, false);
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	public String toCsv() {
+		StringWriter writer = new StringWriter();
+		try {
+			write(writer);
+		} catch (IOException e) {
+			// cannot happen with a StringWriter
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	// Writes the CSV to the given writer, which should be buffered; it is
+	// flushed, but not closed. Throws an InterruptedIOException if the
+	// progress listener cancels the output.
+	public void write(Writer writer) throws IOException {
+		out = writer;
+		row = 0;
+
+		writeTitleRow();
+		writeHeadings();
+
+		int expenseCount = expenses.size();
+		int written = 0;
+		ExpenseTable.Row expense = expenses.newRow();
+		for (int position : rowsByDate) {
+			expense.moveTo(position);
+			writeExpense(dateHelper.format(expense.getEpochDay()), expense);
+			written++;
+			if (written % PROGRESS_INTERVAL == 0 || written == expenseCount)
+				reportProgress(written, expenseCount);
+		}
+
+		writeTotalExpenses();
+		writeTotalConsumptions();
+		writeResults();
+
+		out.flush();
+		out = null;
+	}
+
+	// Writes the CSV in UTF-8 to the given channel, which is not closed.
+	public void write(WritableByteChannel channel) throws IOException {
+		write(new BufferedWriter(Channels.newWriter(channel, "UTF-8")));
+	}
+
+	private void reportProgress(int written, int expenseCount) throws IOException {
+		if (progressListener != null && !progressListener.onProgress(written, expenseCount))
+			throw new InterruptedIOException("CSV output cancelled");
+	}
+
+	private void writeTitleRow() throws IOException {
+		row++;
+		out.write(quote(calculation.getTitle()));
+		out.write('\n');
+	}
+
+	private void writeHeadings() throws IOException {
+		row++;
+		out.write(",,,,");
+		if (multiCurrency)
+			out.write(",,,");
+		for (Person person : persons) {
+			out.write(',');
+			out.write(quote(person.getName()));
+		}
+		for (Person person : persons) {
+			out.write(',');
+			out.write(quote(person.getName()));
+		}
+		out.write('\n');
+	}
+
+	private void writeExpense(String formattedDate, ExpenseTable.Row expense) throws IOException {
+		row++;
+		String rowNumber = Integer.toString(row);
+
+		out.write(formattedDate);
+		out.write(',');
+		out.write(quote(expense.getPerson().getName()));
+		out.write(',');
+		out.write(quote(expense.getTitle()));
+		out.write(',');
+
+		Currency currency = expense.getCurrency();
+		if (multiCurrency) {
+			Currency mainCurrency = calculation.getMainCurrency();
+			if (currency.equals(mainCurrency)) {
+				out.write(",,,");
+				out.write(quote(currency.getCurrencyCode()));
+				out.write(',');
+				writeAmount(expense);
+			} else {
+				out.write(quote(currency.getCurrencyCode()));
+				out.write(',');
+				writeAmount(expense);
+				out.write(',');
+				int period = currency.getRatePeriod(expense.getEpochDay());
+				out.write(Double.toString(currency.getExchangeRateMain(period) / currency.getExchangeRateThis(period)));
+				out.write(',');
+				out.write(quote(mainCurrency.getCurrencyCode()));
+				out.write(',');
+				// =<local amount>*<exchange rate>
+				out.write('=');
+				writeCell(LOCAL_AMOUNT_COLUMN, rowNumber);
+				out.write('*');
+				writeCell(EXCHANGE_RATE_COLUMN, rowNumber);
+			}
+		} else {
+			out.write(quote(currency.getCurrencyCode()));
+			out.write(',');
+			writeAmount(expense);
+		}
+
+		for (int i = 0; i < persons.size(); i++) {
+			out.write(',');
+			if (expense.isUnevenSplit()) {
+				double w = expense.getWeight(i);
+				if (w != 0)
+					out.write(helper.format(w, false));
+			} else {
+				out.write(evenWeight);
+			}
+		}
+
+		for (int i = 0; i < persons.size(); i++) {
+			// =<amount>*<weight>/SUM(<first weight>:<last weight>)
+			out.write(",=");
+			writeCell(exchangedAmountColumn, rowNumber);
+			out.write('*');
+			writeCell(weightColumns[i], rowNumber);
+			out.write("/SUM(");
+			writeCell(weightColumns[0], rowNumber);
+			out.write(':');
+			writeCell(weightColumns[weightColumns.length - 1], rowNumber);
+			out.write(')');
+		}
+
+		out.write('\n');
+	}
+
+	private void writeTotalExpenses() throws IOException {
+		row++;
+		out.write(leadingCells);
+
+		int lastExpenseRow = 3 + expenses.size() - 1;
+		String nameRange = cell(3, NAME_COLUMN) + ":" + cell(lastExpenseRow, NAME_COLUMN);
+		String amountRange = cell(3, exchangedAmountColumn) + ":" + cell(lastExpenseRow, exchangedAmountColumn);
+		for (int i = 0; i < persons.size(); i++) {
+			// =SUMIF(<names>; <person name>; <amounts>)
+			out.write(",=SUMIF(");
+			out.write(nameRange);
+			out.write("; ");
+			out.write(cell(2, shareColumns[i]));
+			out.write("; ");
+			out.write(amountRange);
+			out.write(')');
+		}
+
+		out.write('\n');
+	}
+
+	private void writeTotalConsumptions() throws IOException {
+		row++;
+		out.write(leadingCells);
+
+		int lastExpenseRow = 3 + expenses.size() - 1;
+		for (int i = 0; i < persons.size(); i++) {
+			out.write(",=SUM(");
+			out.write(cell(3, shareColumns[i]));
+			out.write(':');
+			out.write(cell(lastExpenseRow, shareColumns[i]));
+			out.write(')');
+		}
+
+		out.write('\n');
+	}
+
+	private void writeResults() throws IOException {
+		row++;
+		out.write(leadingCells);
+
+		for (int i = 0; i < persons.size(); i++) {
+			out.write(",=");
+			out.write(cell(row - 2, shareColumns[i]));
+			out.write('-');
+			out.write(cell(row - 1, shareColumns[i]));
+		}
+
+		out.write('\n');
+	}
+
+	// Amounts are written with the main currency's decimals.
+	private void writeAmount(ExpenseTable.Row expense) throws IOException {
+		if (expense.getCurrency().getDecimalFactor() != mainDecimalFactor) {
+			out.write(helper.format(expense.getAmount(), false));
+			return;
+		}
+		cell.setLength(0);
+		helper.appendFixed(cell, expense.getFixedAmount(), false);
+		int length = cell.length();
+		if (length > cellChars.length)
+			cellChars = new char[length];
+		cell.getChars(0, length, cellChars, 0);
+		out.write(cellChars, 0, length);
+	}
+
+	private void writeCell(String column, String rowNumber) throws IOException {
+		out.write(column);
+		out.write(rowNumber);
+	}
+
+	private String quote(String text) {
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+
+	private static String cell(int row, String column) {
+		return column + row;
+	}
+
+	private static String column(int column) {
+		String columns = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+		String result = "";
+		if (column > 26) result += columns.charAt((column - 1) / 26 - 1);
+		result += columns.charAt((column - 1) % 26);
+		return result;
+	}
+
+	// Column numbers (n = Number of persons):
+	// Single | Multi | Description
+	//     1  |    1  |  Date
+	//     2  |    2  |  Payer
+	//     3  |    3  |  Title
+	//     -  |    4  |  Local Currency
+	//     -  |    5  |  Amount (local currency)
+	//     -  |    6  |  Exchange Rate
+	//     4  |    7  |  Main Currency
+	//     5  |    8  |  Amount (exchanged)
+	//     6  |    9  |  First split weight
+	//   5+n  |  8+n  |  Last split weight
+	//   6+n  |  9+n  |  First share
+	//  5+2n  | 8+2n  |  Last share
+	private static final String NAME_COLUMN = column(2);
+	private static final String LOCAL_AMOUNT_COLUMN = column(5);
+	private static final String EXCHANGE_RATE_COLUMN = column(6);
+
+	private int exchangedAmountColumn() {
+		return multiCurrency ? 8 : 5;
+	}
+	private int firstWeightColumn() {
+		return multiCurrency ? 9 : 6;
+	}
+	private int firstShareColumn() {
+		return firstWeightColumn() + persons.size();
+	}
+
+}
@@ -0,0 +1,339 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Currency;
+import ivl.android.moneybalance.data.EpochDay;
+
+// Reads reference exchange rates in the format of the European Central Bank,
+// given in units of each currency per euro. Both the CSV file (a "Date"
+// column followed by one column per currency, e.g. eurofxref-hist.csv) and
+// the XML file (Cube elements with a time attribute holding Cube elements
+// with currency and rate attributes, e.g. eurofxref-hist.xml) are understood.
+//
+// The input is streamed once, and only the rates the calculation needs are
+// kept: those of its currencies on the days of its expenses, plus the last
+// day before. Memory use thus depends on the calculation, not on the length
+// of the history. Without expenses, only the latest day is kept.
+public class ReferenceRateInput {
+
+	private static final String EURO = "EUR";
+
+	private final Calculation calculation;
+	private final String[] codes;
+	private final int fromDay;
+	private final int toDay;
+
+	// kept days, unordered; rates by day * codes.length + currency, NaN if
+	// the day has no rate for the currency
+	private int dayCount = 0;
+	private int[] days = new int[16];
+	private double[] rates;
+	// the last day before fromDay
+	private int anchorDay = Integer.MIN_VALUE;
+	private final double[] anchorRates;
+
+	// the day being read
+	private int currentDay;
+	private final double[] currentRates;
+
+	private int updatedCount = 0;
+	private int rateCount = 0;
+	private final List<String> missingCodes = new ArrayList<>();
+
+	// Takes the currency codes and date range from the calculation, so that
+	// read() may run on another thread.
+	public ReferenceRateInput(Calculation calculation) {
+		this.calculation = calculation;
+
+		List<Currency> currencies = calculation.getCurrencies();
+		codes = new String[currencies.size()];
+		for (int i = 0; i < codes.length; i++)
+			codes[i] = currencies.get(i).getCurrencyCode().toUpperCase(Locale.ENGLISH);
+		rates = new double[days.length * codes.length];
+		anchorRates = new double[codes.length];
+		currentRates = new double[codes.length];
+
+		if (calculation.getExpenses().isEmpty()) {
+			fromDay = Integer.MAX_VALUE;
+			toDay = Integer.MAX_VALUE;
+		} else {
+			fromDay = EpochDay.of(calculation.getFirstDate());
+			toDay = EpochDay.of(calculation.getLastDate());
+		}
+	}
+
+	// Reads the whole input. The calculation is not changed until apply().
+	public void read(Reader reader) throws IOException {
+		BufferedReader in = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+		in.mark(256);
+		int skipped = 0;
+		int c;
+		while ((c = in.read()) == '\uFEFF' || Character.isWhitespace(c))
+			skipped++;
+		in.reset();
+		in.skip(skipped);
+
+		if (c == '<')
+			readXml(in);
+		else
+			readCsv(in);
+	}
+
+	// The number of days whose rates were kept
+	public int getDayCount() {
+		return dayCount + (anchorDay != Integer.MIN_VALUE ? 1 : 0);
+	}
+
+	// Sets the exchange rates of all currencies found in the input: the rate
+	// on the first day of the calculation becomes the base rate, and each
+	// later change a dated rate. Other dated rates are removed. Currencies
+	// not found in the input are left alone.
+	public void apply() {
+		int[] order = sortedDays();
+		Currency mainCurrency = calculation.getMainCurrency();
+		int main = calculation.getCurrencies().indexOf(mainCurrency);
+		mainCurrency.clearExchangeRates();
+
+		List<Currency> currencies = calculation.getCurrencies();
+		for (int i = 0; i < currencies.size(); i++) {
+			if (i == main)
+				continue;
+			Currency currency = currencies.get(i);
+
+			boolean found = false;
+			double previousThis = Double.NaN;
+			double previousMain = Double.NaN;
+			for (int row : order) {
+				double rateThis = (row < 0 ? anchorRates[i] : rates[row * codes.length + i]);
+				double rateMain = (row < 0 ? anchorRates[main] : rates[row * codes.length + main]);
+				if (Double.isNaN(rateThis) || Double.isNaN(rateMain))
+					continue;
+				if (!found) {
+					currency.clearExchangeRates();
+					currency.setExchangeRate(rateThis, rateMain);
+					found = true;
+				} else if (rateThis != previousThis || rateMain != previousMain) {
+					currency.setExchangeRate(days[row], rateThis, rateMain);
+					rateCount++;
+				}
+				previousThis = rateThis;
+				previousMain = rateMain;
+			}
+
+			if (found)
+				updatedCount++;
+			else
+				missingCodes.add(codes[i]);
+		}
+	}
+
+	// Currencies updated by apply(), not counting the main currency
+	public int getUpdatedCount() {
+		return updatedCount;
+	}
+
+	// Dated rates set by apply()
+	public int getRateCount() {
+		return rateCount;
+	}
+
+	// Codes of the currencies apply() found no rates for
+	public List<String> getMissingCodes() {
+		return missingCodes;
+	}
+
+	// Row numbers in the order of their days, the anchor day as -1 first
+	private int[] sortedDays() {
+		long[] keys = new long[dayCount];
+		for (int row = 0; row < dayCount; row++)
+			keys[row] = ((long) days[row] << 32) | row;
+		Arrays.sort(keys);
+
+		boolean anchored = (anchorDay != Integer.MIN_VALUE);
+		int[] order = new int[dayCount + (anchored ? 1 : 0)];
+		int i = 0;
+		if (anchored)
+			order[i++] = -1;
+		for (long key : keys)
+			order[i++] = (int) key;
+		return order;
+	}
+
+	private void startDay(int day) {
+		currentDay = day;
+		for (int i = 0; i < codes.length; i++)
+			currentRates[i] = (EURO.equals(codes[i]) ? 1 : Double.NaN);
+	}
+
+	private void setRate(String code, String text) {
+		code = code.trim().toUpperCase(Locale.ENGLISH);
+		for (int i = 0; i < codes.length; i++) {
+			if (codes[i].equals(code)) {
+				currentRates[i] = parseRate(text);
+				return;
+			}
+		}
+	}
+
+	private void endDay() {
+		if (currentDay == Integer.MIN_VALUE)
+			return;
+		if (currentDay >= fromDay && currentDay <= toDay) {
+			if (dayCount == days.length) {
+				int[] newDays = new int[dayCount * 2];
+				System.arraycopy(days, 0, newDays, 0, dayCount);
+				days = newDays;
+				double[] newRates = new double[days.length * codes.length];
+				System.arraycopy(rates, 0, newRates, 0, dayCount * codes.length);
+				rates = newRates;
+			}
+			days[dayCount] = currentDay;
+			System.arraycopy(currentRates, 0, rates, dayCount * codes.length, codes.length);
+			dayCount++;
+		} else if (currentDay < fromDay && currentDay > anchorDay) {
+			anchorDay = currentDay;
+			System.arraycopy(currentRates, 0, anchorRates, 0, codes.length);
+		}
+		currentDay = Integer.MIN_VALUE;
+	}
+
+	// Rates are positive decimals; anything else, like "N/A", is missing.
+	private static double parseRate(String text) {
+		try {
+			double rate = Double.parseDouble(text.trim());
+			return rate > 0 && !Double.isInfinite(rate) ? rate : Double.NaN;
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	// Parses yyyy-mm-dd, returning Integer.MIN_VALUE if the text is not a
+	// date.
+	private static int parseDate(String text) {
+		text = text.trim();
+		if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-')
+			return Integer.MIN_VALUE;
+		int year = parseDigits(text, 0, 4);
+		int month = parseDigits(text, 5, 7);
+		int day = parseDigits(text, 8, 10);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31)
+			return Integer.MIN_VALUE;
+		return EpochDay.of(year, month, day);
+	}
+
+	private static int parseDigits(String text, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private void readCsv(BufferedReader reader) throws IOException {
+		String line = reader.readLine();
+		if (line == null)
+			throw new IOException("Empty exchange rate file");
+		String[] headings = line.split(",");
+		int dateColumn = -1;
+		for (int i = 0; i < headings.length; i++)
+			if (headings[i].trim().equalsIgnoreCase("Date"))
+				dateColumn = i;
+		if (dateColumn < 0)
+			throw new IOException("No date column in exchange rate file");
+
+		currentDay = Integer.MIN_VALUE;
+		while ((line = reader.readLine()) != null) {
+			String[] cells = line.split(",");
+			if (dateColumn >= cells.length)
+				continue;
+			int day = parseDate(cells[dateColumn]);
+			if (day == Integer.MIN_VALUE || day > toDay || (day < fromDay && day <= anchorDay))
+				continue;
+			startDay(day);
+			for (int i = 0; i < cells.length && i < headings.length; i++)
+				if (i != dateColumn)
+					setRate(headings[i], cells[i]);
+			endDay();
+		}
+	}
+
+	private void readXml(Reader in) throws IOException {
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			XMLReader reader = factory.newSAXParser().getXMLReader();
+			try {
+				reader.setFeature("http://xml.org/sax/features/external-general-entities", false);
+				reader.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+			} catch (SAXException e) {
+				// not supported by this parser; the ECB files have no entities
+			}
+			currentDay = Integer.MIN_VALUE;
+			reader.setContentHandler(new DefaultHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					String name = (localName == null || localName.length() == 0 ? qName : localName);
+					if (!name.endsWith("Cube"))
+						return;
+					String time = attributes.getValue("time");
+					if (time != null) {
+						endDay();
+						int day = parseDate(time);
+						if (day != Integer.MIN_VALUE)
+							startDay(day);
+					}
+					String currency = attributes.getValue("currency");
+					String rate = attributes.getValue("rate");
+					if (currency != null && rate != null && currentDay != Integer.MIN_VALUE)
+						setRate(currency, rate);
+				}
+
+				@Override
+				public void endDocument() {
+					endDay();
+				}
+			});
+			reader.parse(new InputSource(in));
+		} catch (SAXException e) {
+			throw new IOException("Malformed exchange rate file: " + e.getMessage());
+		} catch (ParserConfigurationException e) {
+			throw new IOException("No XML parser: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+// The fast paths of CurrencyHelper must give the same results as
+// NumberFormat, which they replace, in every locale.
+public class CurrencyHelperTest {
+
+	private static final String[] CURRENCY_CODES = { "EUR", "USD", "JPY", "GBP", "INR", "CHF", "BHD" };
+	private static final int AMOUNTS_PER_FORMAT = 40;
+	// characters that typed amounts are made of, including other scripts'
+	// digits and separators
+	private static final String TYPED_CHARACTERS = "0123456789.,- '\u00A0\u066B\u066C\u0660\u0661\u0967\u2212";
+
+	@Test
+	public void formatFixedMatchesNumberFormat() {
+		Random random = new Random(42);
+		for (Locale locale : Locale.getAvailableLocales()) {
+			for (String code : CURRENCY_CODES) {
+				for (boolean grouping : new boolean[] { true, false }) {
+					CurrencyHelper helper = CurrencyHelper.get(code, locale, grouping);
+					Currency currency = Currency.getInstance(code);
+					NumberFormat currencyFormat = currencyFormat(currency, locale, grouping);
+					NumberFormat plainFormat = plainFormat(currency, locale, grouping);
+					long decimalFactor = decimalFactor(currency);
+
+					for (int i = 0; i < AMOUNTS_PER_FORMAT; i++) {
+						long amount = randomAmount(random, i);
+						double value = (double) amount / decimalFactor;
+						String context = locale + " " + code + " " + amount + (grouping ? "" : " ungrouped");
+						assertEquals(context, currencyFormat.format(value), helper.formatFixed(amount, true));
+						assertEquals(context, plainFormat.format(value), helper.formatFixed(amount, false));
+
+						StringBuilder builder = new StringBuilder("x");
+						helper.appendFixed(builder, amount, true);
+						assertEquals(context, "x" + currencyFormat.format(value), builder.toString());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void parseMatchesNumberFormat() {
+		Random random = new Random(43);
+		for (Locale locale : Locale.getAvailableLocales()) {
+			for (String code : CURRENCY_CODES) {
+				for (boolean grouping : new boolean[] { true, false }) {
+					CurrencyHelper helper = CurrencyHelper.get(code, locale, grouping);
+					Currency currency = Currency.getInstance(code);
+					NumberFormat plainFormat = plainFormat(currency, locale, grouping);
+					long decimalFactor = decimalFactor(currency);
+
+					for (int i = 0; i < AMOUNTS_PER_FORMAT; i++) {
+						String formatted = plainFormat.format((double) randomAmount(random, i) / decimalFactor);
+						assertParsesAlike(locale + " " + code, plainFormat, helper, formatted);
+						assertParsesAlike(locale + " " + code, plainFormat, helper, randomTyping(random));
+					}
+				}
+			}
+		}
+	}
+
+	// exact where formatting a double would round
+	@Test
+	public void formatFixedHandlesExtremes() {
+		CurrencyHelper helper = CurrencyHelper.get("EUR", Locale.US, true);
+		assertEquals("0.00", helper.formatFixed(0, false));
+		assertEquals("-0.01", helper.formatFixed(-1, false));
+		assertEquals("-1.00", helper.formatFixed(-100, false));
+		assertEquals("92,233,720,368,547,758.07", helper.formatFixed(Long.MAX_VALUE, false));
+		assertEquals("-92,233,720,368,547,758.07", helper.formatFixed(-Long.MAX_VALUE, false));
+	}
+
+	@Test
+	public void helpersAreCachedPerThread() throws InterruptedException {
+		final CurrencyHelper[] other = new CurrencyHelper[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				other[0] = CurrencyHelper.get("EUR", Locale.GERMANY, true);
+			}
+		};
+		thread.start();
+		thread.join();
+
+		CurrencyHelper helper = CurrencyHelper.get("EUR", Locale.GERMANY, true);
+		assertSame(helper, CurrencyHelper.get("EUR", Locale.GERMANY, true));
+		assertNotSame(helper, CurrencyHelper.get("EUR", Locale.GERMANY, false));
+		assertNotSame(helper, other[0]);
+	}
+
+	@Test
+	public void groupingIsFixedPerHelper() {
+		assertEquals("1.234.567,50", CurrencyHelper.get("EUR", Locale.GERMANY, true).format(1234567.5, false));
+		assertEquals("1234567,50", CurrencyHelper.get("EUR", Locale.GERMANY, false).format(1234567.5, false));
+	}
+
+	private static void assertParsesAlike(String context, NumberFormat format, CurrencyHelper helper, String text) {
+		assertEquals(context + " \"" + text + "\"", parse(format, text), parse(helper, text));
+	}
+
+	private static String parse(NumberFormat format, String text) {
+		try {
+			return Double.toString(format.parse(text).doubleValue());
+		} catch (ParseException e) {
+			return "ParseException";
+		}
+	}
+
+	private static String parse(CurrencyHelper helper, String text) {
+		try {
+			return Double.toString(helper.parse(text));
+		} catch (ParseException e) {
+			return "ParseException";
+		}
+	}
+
+	// small, negative, large and very large amounts in turn
+	private static long randomAmount(Random random, int i) {
+		switch (i % 5) {
+			case 0:
+				return random.nextInt(1000) - 500;
+			case 1:
+				return -random.nextInt(100000000);
+			case 2:
+				return random.nextInt();
+			case 3:
+				return (random.nextLong() >> random.nextInt(64)) % 1000000000000000L;
+			default:
+				return i;
+		}
+	}
+
+	private static String randomTyping(Random random) {
+		int length = 1 + random.nextInt(12);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			text.append(TYPED_CHARACTERS.charAt(random.nextInt(TYPED_CHARACTERS.length())));
+		return text.toString();
+	}
+
+	private static long decimalFactor(Currency currency) {
+		long factor = 1;
+		for (int i = 0; i < currency.getDefaultFractionDigits(); i++)
+			factor *= 10;
+		return factor;
+	}
+
+	// set up like CurrencyHelper sets up its formats
+	private static NumberFormat currencyFormat(Currency currency, Locale locale, boolean grouping) {
+		NumberFormat format = NumberFormat.getCurrencyInstance(locale);
+		format.setCurrency(currency);
+		format.setMinimumFractionDigits(currency.getDefaultFractionDigits());
+		format.setMaximumFractionDigits(currency.getDefaultFractionDigits());
+		format.setGroupingUsed(grouping);
+		return format;
+	}
+
+	private static NumberFormat plainFormat(Currency currency, Locale locale, boolean grouping) {
+		NumberFormat format = NumberFormat.getNumberInstance(locale);
+		format.setMinimumFractionDigits(currency.getDefaultFractionDigits());
+		format.setMaximumFractionDigits(currency.getDefaultFractionDigits());
+		format.setGroupingUsed(grouping);
+		return format;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class CalculationGeneratorTest {
+
+	@Test
+	public void sameSeedGivesSameCalculation() {
+		Calculation a = generate(3);
+		Calculation b = generate(3);
+		assertEquals(a.getFixedExpenseTotal(), b.getFixedExpenseTotal());
+		for (int i = 0; i < a.getExpenses().size(); i++) {
+			Expense x = a.getExpenses().get(i);
+			Expense y = b.getExpenses().get(i);
+			assertEquals(x.getFixedAmount(), y.getFixedAmount());
+			assertEquals(x.getEpochDay(), y.getEpochDay());
+			assertEquals(x.getPerson().getId(), y.getPerson().getId());
+			assertEquals(x.getCurrency().getCurrencyCode(), y.getCurrency().getCurrencyCode());
+		}
+	}
+
+	@Test
+	public void mainCurrencyOnly() {
+		CalculationGenerator generator = new CalculationGenerator();
+		generator.setCurrencyCodes("EUR");
+		generator.setForeignCurrencyRatio(1);
+		Calculation calculation = generator.generate();
+		for (Expense expense : calculation.getExpenses())
+			assertSame(calculation.getMainCurrency(), expense.getCurrency());
+	}
+
+	@Test
+	public void noPersonsWithoutExpenses() {
+		CalculationGenerator generator = new CalculationGenerator();
+		generator.setPersonCount(0);
+		generator.setExpenseCount(0);
+		Calculation calculation = generator.generate();
+		assertEquals(0, calculation.getPersons().size());
+		assertEquals(0, calculation.getExpenses().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void expensesNeedPersons() {
+		CalculationGenerator generator = new CalculationGenerator();
+		generator.setPersonCount(0);
+		generator.generate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needsMainCurrency() {
+		new CalculationGenerator().setCurrencyCodes();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeCounts() {
+		new CalculationGenerator().setExpenseCount(-1);
+	}
+
+	private static Calculation generate(long seed) {
+		return CalculationGenerator.of(seed, 5, 300, "EUR", "USD", "JPY").generate();
+	}
+
+}
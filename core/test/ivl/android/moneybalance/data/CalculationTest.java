@@ -0,0 +1,201 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// The incrementally kept aggregates of a calculation must always equal a
+// full recompute from its expenses.
+public class CalculationTest {
+
+	private static final int OPERATIONS = 3000;
+	private static final int START_DAY = EpochDay.of(2016, 1, 1);
+
+	private Calculation calculation;
+	private Random random;
+
+	@Before
+	public void setUp() {
+		CalculationGenerator generator = CalculationGenerator.of(11, 4, 200, "EUR", "USD", "GBP", "JPY");
+		generator.setDateRange(EpochDay.toCalendar(START_DAY), 100);
+		calculation = generator.generate();
+		random = new Random(12);
+	}
+
+	@Test
+	public void aggregatesMatchRecomputeAfterEveryChange() {
+		assertAggregates();
+		for (int i = 0; i < OPERATIONS; i++) {
+			int count = calculation.getModificationCount();
+			String operation = change();
+			String context = "after " + i + " " + operation;
+			assertTrue(context, calculation.getModificationCount() > count);
+			// leave some changes unobserved, so they pile up
+			if (random.nextInt(3) > 0)
+				assertAggregates(context);
+		}
+	}
+
+	@Test
+	public void rateChangesOnlyExchangeAgain() {
+		Currency usd = calculation.getCurrencyByCode("USD");
+		calculation.getBalanceSheet();
+		int rateChanges = calculation.getRateChangeCount();
+
+		usd.setExchangeRate(0.8, 1);
+		assertEquals(rateChanges + 1, calculation.getRateChangeCount());
+		assertAggregates("base rate");
+		usd.setExchangeRate(START_DAY + 50, 0.7, 1);
+		assertEquals(rateChanges + 1, calculation.getRateChangeCount());
+		assertAggregates("dated rate added");
+		usd.setExchangeRate(START_DAY + 50, 0.6, 1);
+		assertEquals(rateChanges + 2, calculation.getRateChangeCount());
+		assertAggregates("dated rate changed");
+		usd.removeExchangeRate(START_DAY + 50);
+		assertAggregates("dated rate removed");
+	}
+
+	@Test
+	public void removedCurrenciesNoLongerReport() {
+		Currency gbp = calculation.getCurrencyByCode("GBP");
+		calculation.getCurrencies().remove(gbp);
+		assertAggregates("removed");
+
+		int count = calculation.getModificationCount();
+		gbp.setExchangeRate(3, 1);
+		gbp.setCurrencyCode("CHF");
+		assertEquals(count, calculation.getModificationCount());
+		assertNull(calculation.getCurrencyByCode("CHF"));
+	}
+
+	// Makes a random change and returns its name
+	private String change() {
+		List<Expense> expenses = calculation.getExpenses();
+		List<Currency> currencies = calculation.getCurrencies();
+		Expense expense = expenses.isEmpty() ? null : expenses.get(random.nextInt(expenses.size()));
+		// the main currency keeps its rate
+		Currency currency = currencies.get(1 + random.nextInt(currencies.size() - 1));
+
+		switch (random.nextInt(expense == null ? 2 : 11)) {
+			case 0:
+				expenses.add(newExpense());
+				return "add";
+			case 1:
+				currency.setExchangeRate(0.5 + random.nextInt(100) / 50.0, 1);
+				return "base rate";
+			case 2:
+				expenses.remove(expense);
+				return "remove";
+			case 3:
+				expenses.set(expenses.indexOf(expense), newExpense());
+				return "replace";
+			case 4:
+				expense.setFixedAmount(random.nextInt(100000));
+				return "amount";
+			case 5:
+				expense.setEpochDay(randomDay());
+				return "date";
+			case 6:
+				expense.setCurrency(currencies.get(random.nextInt(currencies.size())));
+				return "currency";
+			case 7:
+				expense.setWeights(randomWeights());
+				return "weights";
+			case 8:
+				expense.setPerson(calculation.getPerson(random.nextInt(calculation.getPersonCount())));
+				return "payer";
+			case 9:
+				currency.setExchangeRate(randomDay(), 0.5 + random.nextInt(100) / 50.0, 1);
+				return "dated rate";
+			default:
+				if (currency.getRatePeriodCount() > 1) {
+					int period = random.nextInt(currency.getRatePeriodCount() - 1);
+					currency.removeExchangeRate(currency.getRatePeriodStart(period));
+					return "remove dated rate";
+				}
+				currency.clearExchangeRates();
+				expenses.add(newExpense());
+				return "clear dated rates";
+		}
+	}
+
+	private Expense newExpense() {
+		Expense expense = new Expense(calculation);
+		expense.setPerson(calculation.getPerson(random.nextInt(calculation.getPersonCount())));
+		List<Currency> currencies = calculation.getCurrencies();
+		expense.setCurrency(currencies.get(random.nextInt(currencies.size())));
+		expense.setFixedAmount(random.nextInt(100000));
+		expense.setEpochDay(randomDay());
+		if (random.nextBoolean())
+			expense.setWeights(randomWeights());
+		return expense;
+	}
+
+	// within and just outside the generated range, to move its ends
+	private int randomDay() {
+		return START_DAY - 5 + random.nextInt(110);
+	}
+
+	private double[] randomWeights() {
+		double[] weights = new double[calculation.getPersonCount()];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = random.nextInt(3);
+		weights[random.nextInt(weights.length)] = 1;
+		return weights;
+	}
+
+	private void assertAggregates() {
+		assertAggregates("initially");
+	}
+
+	private void assertAggregates(String context) {
+		BalanceSheet expected = BalanceEngine.compute(calculation);
+		assertEquals(context, expected.getFixedExpenseTotal(), calculation.getFixedExpenseTotal());
+
+		int first = Integer.MAX_VALUE;
+		int last = Integer.MIN_VALUE;
+		for (Expense expense : calculation.getExpenses()) {
+			first = Math.min(first, expense.getEpochDay());
+			last = Math.max(last, expense.getEpochDay());
+		}
+		if (calculation.getExpenses().isEmpty()) {
+			assertNull(context, calculation.getFirstDate());
+			assertEquals(context, 0, calculation.getDuration());
+		} else {
+			assertEquals(context, EpochDay.toCalendar(first), calculation.getFirstDate());
+			assertEquals(context, EpochDay.toCalendar(last), calculation.getLastDate());
+			assertEquals(context, last - first + 1, calculation.getDuration());
+		}
+
+		BalanceSheet sheet = calculation.getBalanceSheet();
+		assertEquals(context, expected.getExpenseCount(), sheet.getExpenseCount());
+		assertEquals(context, expected.getFixedExpenseTotal(), sheet.getFixedExpenseTotal());
+		for (int i = 0; i < calculation.getPersonCount(); i++) {
+			assertEquals(context, expected.getPaid(i), sheet.getPaid(i));
+			assertEquals(context, expected.getConsumed(i), sheet.getConsumed(i));
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// An expense table must describe the same expenses as the calculation's
+// expense objects.
+public class ExpenseTableTest {
+
+	private Calculation calculation;
+
+	@Before
+	public void setUp() {
+		CalculationGenerator generator = CalculationGenerator.of(21, 5, 500, "EUR", "USD", "GBP", "JPY");
+		generator.setUnevenSplitRatio(0.4);
+		calculation = generator.generate();
+
+		Currency usd = calculation.getCurrencyByCode("USD");
+		usd.setExchangeRate(EpochDay.of(2016, 4, 1), 0.9, 1);
+		usd.setExchangeRate(EpochDay.of(2016, 9, 1), 1.1, 1);
+	}
+
+	@Test
+	public void rowsMatchExpenses() {
+		assertMatches(ExpenseTable.of(calculation));
+	}
+
+	@Test
+	public void rowViewMatchesExpenses() {
+		ExpenseTable table = ExpenseTable.of(calculation);
+		ExpenseTable.Row row = table.newRow();
+		List<Expense> expenses = calculation.getExpenses();
+		for (int i = 0; i < expenses.size(); i++) {
+			Expense expense = expenses.get(i);
+			row.moveTo(i);
+			String context = "row " + i;
+			assertEquals(context, i, row.getPosition());
+			assertEquals(context, expense.getId(), row.getId());
+			assertSame(context, expense.getPerson(), row.getPerson());
+			assertEquals(context, expense.getTitle(), row.getTitle());
+			assertEquals(context, expense.getFixedAmount(), row.getFixedAmount());
+			assertEquals(context, expense.getAmount(), row.getAmount(), 0);
+			assertSame(context, expense.getCurrency(), row.getCurrency());
+			assertEquals(context, expense.getExchangedFixedAmount(), row.getExchangedFixedAmount());
+			assertEquals(context, expense.getEpochDay(), row.getEpochDay());
+			assertEquals(context, expense.isUnevenSplit(), row.isUnevenSplit());
+			for (int p = 0; p < calculation.getPersonCount(); p++)
+				assertEquals(context, expense.getWeight(p), row.getWeight(p), 0);
+		}
+	}
+
+	@Test
+	public void appendsCurrenciesNotInTheCalculation() {
+		Currency chf = new Currency(calculation.getId());
+		chf.setId(99);
+		chf.setCurrencyCode("CHF");
+		chf.setExchangeRate(1, 0.9);
+		calculation.getExpenses().get(3).setCurrency(chf);
+		calculation.getExpenses().get(7).setCurrency(chf);
+
+		Currency gbp = calculation.getCurrencyByCode("GBP");
+		calculation.getCurrencies().remove(gbp);
+
+		ExpenseTable table = assertMatches(ExpenseTable.of(calculation));
+		assertEquals(calculation.getCurrencies().size() + 2, table.getCurrencyCount());
+		for (int i = 0; i < calculation.getCurrencies().size(); i++)
+			assertSame(calculation.getCurrencies().get(i), table.getCurrencyAt(i));
+	}
+
+	@Test
+	public void rowsByDateAreStable() {
+		ExpenseTable table = ExpenseTable.of(calculation);
+		final List<Expense> expenses = calculation.getExpenses();
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < expenses.size(); i++)
+			expected.add(i);
+		Collections.sort(expected, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(expenses.get(a).getEpochDay(), expenses.get(b).getEpochDay());
+			}
+		});
+
+		int[] rows = table.getRowsByDate();
+		assertEquals(expected.size(), rows.length);
+		for (int i = 0; i < rows.length; i++)
+			assertEquals("position " + i, (long) expected.get(i), rows[i]);
+	}
+
+	@Test
+	public void snapshotsTheModificationCount() {
+		ExpenseTable table = ExpenseTable.of(calculation);
+		assertEquals(calculation.getModificationCount(), table.getModificationCount());
+	}
+
+	private ExpenseTable assertMatches(ExpenseTable table) {
+		List<Expense> expenses = calculation.getExpenses();
+		int personCount = calculation.getPersonCount();
+		assertSame(calculation, table.getCalculation());
+		assertEquals(expenses.size(), table.size());
+		assertEquals(personCount, table.getPersonCount());
+
+		long[] expectedShares = new long[personCount];
+		long[] shares = new long[personCount];
+		for (int row = 0; row < expenses.size(); row++) {
+			Expense expense = expenses.get(row);
+			String context = "row " + row;
+			assertEquals(context, expense.getId(), table.getId(row));
+			assertEquals(context, calculation.getPersons().indexOf(expense.getPerson()), table.getPayer(row));
+			assertSame(context, expense.getPerson(), table.getPerson(row));
+			assertEquals(context, expense.getTitle(), table.getTitle(row));
+			assertEquals(context, expense.getFixedAmount(), table.getFixedAmount(row));
+			assertSame(context, expense.getCurrency(), table.getCurrency(row));
+			assertSame(context, expense.getCurrency(), table.getCurrencyAt(table.getCurrencyIndex(row)));
+			assertEquals(context, expense.getExchangedFixedAmount(), table.getExchangedFixedAmount(row));
+			assertEquals(context, expense.getEpochDay(), table.getEpochDay(row));
+			assertEquals(context, expense.isUnevenSplit(), table.isUnevenSplit(row));
+			for (int p = 0; p < personCount; p++)
+				assertEquals(context, expense.getWeight(p), table.getWeight(row, p), 0);
+
+			expense.getFixedShares(expectedShares);
+			table.split(row, expense.getFixedAmount(), shares);
+			assertArrayEquals(context, expectedShares, shares);
+		}
+		return table;
+	}
+
+}
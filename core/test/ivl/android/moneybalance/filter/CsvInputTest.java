@@ -0,0 +1,119 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.CalculationGenerator;
+import ivl.android.moneybalance.data.Expense;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+// Reading what CsvOutput wrote must give back the same expenses, in the
+// order of the output.
+public class CsvInputTest {
+
+	@Test
+	public void readsBackSingleCurrencyOutput() throws IOException {
+		assertRoundTrip(generate("EUR"));
+	}
+
+	@Test
+	public void readsBackMultiCurrencyOutput() throws IOException {
+		// JPY amounts are written with the main currency's two decimals
+		assertRoundTrip(generate("EUR", "USD", "GBP", "JPY"));
+	}
+
+	@Test
+	public void readsBackQuotedTitles() throws IOException {
+		Calculation calculation = generate("EUR", "USD");
+		calculation.getExpenses().get(0).setTitle("Dinner, \"La Mer\"");
+		calculation.getExpenses().get(1).setTitle("");
+		calculation.getPersons().get(0).setName("O'Neil, \"Bob\"");
+		assertRoundTrip(calculation);
+	}
+
+	private static Calculation generate(String... currencyCodes) {
+		CalculationGenerator generator = CalculationGenerator.of(7, 4, 300, currencyCodes);
+		generator.setForeignCurrencyRatio(0.5);
+		generator.setUnevenSplitRatio(0.3);
+		return generator.generate();
+	}
+
+	private static void assertRoundTrip(Calculation calculation) throws IOException {
+		String csv = new CsvOutput(calculation).toCsv();
+		CsvInput input = new CsvInput(calculation, new StringReader(csv));
+		List<Expense> read = new ArrayList<>();
+		for (Expense expense = input.read(); expense != null; expense = input.read())
+			read.add(expense);
+
+		List<Expense> expected = byDate(calculation.getExpenses());
+		assertEquals(expected.size(), read.size());
+		assertEquals(expected.size(), input.getExpenseCount());
+		assertEquals(0, input.getSkippedCount());
+		assertEquals(0, input.getFirstSkippedLine());
+
+		int personCount = calculation.getPersons().size();
+		for (int i = 0; i < expected.size(); i++) {
+			Expense original = expected.get(i);
+			Expense expense = read.get(i);
+			String context = "expense " + original.getId();
+			assertSame(context, calculation, expense.getCalculation());
+			assertEquals(context, original.getEpochDay(), expense.getEpochDay());
+			assertSame(context, original.getPerson(), expense.getPerson());
+			assertEquals(context, original.getTitle(), expense.getTitle());
+			assertSame(context, original.getCurrency(), expense.getCurrency());
+			assertEquals(context, original.getFixedAmount(), expense.getFixedAmount());
+			assertArrayEquals(context, shares(original, personCount), shares(expense, personCount));
+			if (expense.isUnevenSplit())
+				assertNotNull(context, original.getWeights());
+			else if (original.isUnevenSplit())
+				assertNull(context, expense.getWeights());
+		}
+	}
+
+	// CsvOutput orders by date and keeps the order within a day
+	private static List<Expense> byDate(List<Expense> expenses) {
+		List<Expense> sorted = new ArrayList<>(expenses);
+		Collections.sort(sorted, new Comparator<Expense>() {
+			@Override
+			public int compare(Expense a, Expense b) {
+				return Integer.compare(a.getEpochDay(), b.getEpochDay());
+			}
+		});
+		return sorted;
+	}
+
+	private static long[] shares(Expense expense, int personCount) {
+		long[] shares = new long[personCount];
+		expense.getFixedShares(shares);
+		return shares;
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Environment;
+import android.util.Log;
+import android.widget.Toast;
+import ivl.android.moneybalance.dao.BackupDataSource;
+import ivl.android.moneybalance.dao.DataBaseHelper;
+
+// Backs up the database to external storage, or restores it from a backup
+// file, on a worker thread. Like CSV exports, backups are written under a
+// temporary name and renamed once complete.
+class BackupTask extends AsyncTask<Void, Void, String> {
+
+	private final Context context;
+	private final Resources res;
+	private final Uri restoreUri;
+	private final Runnable onRestored;
+
+	private ProgressDialog progressDialog;
+	private File backupFile;
+
+	static void backup(Context context) {
+		new BackupTask(context, null, null).execute();
+	}
+
+	// onRestored is run on the UI thread after a successful restore.
+	static void restore(Uri uri, Context context, Runnable onRestored) {
+		new BackupTask(context, uri, onRestored).execute();
+	}
+
+	private BackupTask(Context context, Uri restoreUri, Runnable onRestored) {
+		this.context = context;
+		this.restoreUri = restoreUri;
+		this.onRestored = onRestored;
+		res = context.getResources();
+	}
+
+	@Override
+	protected void onPreExecute() {
+		progressDialog = new ProgressDialog(context);
+		progressDialog.setMessage(res.getString(restoreUri == null ? R.string.backup_progress : R.string.restore_progress));
+		progressDialog.setIndeterminate(true);
+		progressDialog.setCancelable(false);
+		progressDialog.show();
+	}
+
+	// Returns null on success, an error message otherwise.
+	@Override
+	protected String doInBackground(Void... params) {
+		BackupDataSource dataSource = new BackupDataSource(DataBaseHelper.getInstance(context));
+		if (restoreUri == null)
+			return backup(dataSource);
+		else
+			return restore(dataSource);
+	}
+
+	private String backup(BackupDataSource dataSource) {
+		File root = Environment.getExternalStorageDirectory();
+		if (!root.canWrite())
+			return res.getString(R.string.export_error_no_permission);
+
+		File dir = new File(root, res.getString(R.string.app_name));
+		if (!dir.exists() && !dir.mkdir())
+			return String.format(res.getString(R.string.export_error_mkdir), dir.toString());
+
+		String date = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+		backupFile = CsvExporter.determineFileName(dir, res.getString(R.string.app_name) + " " + date, ".mbk");
+		if (backupFile == null)
+			return res.getString(R.string.export_error_no_free_file);
+
+		File tempFile = new File(dir, "." + backupFile.getName() + ".tmp");
+		try {
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(tempFile));
+			try {
+				dataSource.backup(stream);
+			} finally {
+				stream.close();
+			}
+			if (!tempFile.renameTo(backupFile))
+				throw new IOException("Failed to rename " + tempFile);
+			return null;
+		} catch (IOException e) {
+			tempFile.delete();
+			String message = String.format(res.getString(R.string.export_error_write_failed), backupFile.toString());
+			Log.e("moneybalance", message, e);
+			return message + ":" + e.toString();
+		}
+	}
+
+	private String restore(BackupDataSource dataSource) {
+		try {
+			InputStream stream = new BufferedInputStream(context.getContentResolver().openInputStream(restoreUri));
+			try {
+				dataSource.restore(stream);
+			} finally {
+				stream.close();
+			}
+			return null;
+		} catch (IOException e) {
+			String message = String.format(res.getString(R.string.import_error_read_failed), restoreUri.getLastPathSegment());
+			Log.e("moneybalance", message, e);
+			return message + ":" + e.toString();
+		}
+	}
+
+	@Override
+	protected void onPostExecute(String error) {
+		try {
+			progressDialog.dismiss();
+		} catch (IllegalArgumentException e) {
+			// the activity has gone away in the meantime
+		}
+
+		if (error != null) {
+			Toast.makeText(context, error, Toast.LENGTH_LONG).show();
+		} else if (restoreUri == null) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO)
+				CsvExporter.triggerMediaRescan(backupFile, context);
+			String message = String.format(res.getString(R.string.backup_success), backupFile.toString());
+			Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+		} else {
+			Toast.makeText(context, res.getString(R.string.restore_success), Toast.LENGTH_LONG).show();
+			if (onRestored != null)
+				onRestored.run();
+		}
+	}
+
+}
@@ -255,10 +255,9 @@ public class CalculationEditorActivity extends ActionBarActivity {
 		Currency currency = (Currency) currencyField.getSelectedItem();
 		List<String> personNames = getPersonNames();
 
-		DataBaseHelper dbHelper = new DataBaseHelper(this);
+		DataBaseHelper dbHelper = DataBaseHelper.getInstance(this);
 		CalculationDataSource dataSource = new CalculationDataSource(dbHelper);
 		Calculation calculation = dataSource.createCalculation(title, currency.getCurrencyCode(), personNames);
-		dbHelper.close();
 
 		Intent intent = new Intent(this, ExpenseListActivity.class);
 		intent.putExtra(ExpenseListActivity.PARAM_CALCULATION_ID, calculation.getId());
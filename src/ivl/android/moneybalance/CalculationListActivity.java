@@ -18,18 +18,16 @@ package ivl.android.moneybalance;
 
 import ivl.android.moneybalance.dao.CalculationDataSource;
 import ivl.android.moneybalance.dao.DataBaseHelper;
-import ivl.android.moneybalance.data.Calculation;
-import ivl.android.moneybalance.data.Expense;
-import ivl.android.moneybalance.data.Person;
+import ivl.android.moneybalance.dao.SummaryDataSource;
+import ivl.android.moneybalance.data.CalculationSummary;
 
-import java.text.DateFormat;
-import java.util.List;
 
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.view.WindowCompat;
 import android.support.v4.widget.CursorAdapter;
@@ -48,8 +46,9 @@ import android.widget.TextView;
 
 public class CalculationListActivity extends ActionBarActivity implements OnItemClickListener {
 
-	private final DataBaseHelper dbHelper = new DataBaseHelper(this);
-	private final CalculationDataSource dataSource = new CalculationDataSource(dbHelper);
+	private DataBaseHelper dbHelper;
+	private CalculationDataSource dataSource;
+	private SummaryDataSource summaryDataSource;
 	private Cursor cursor;
 
 	private ListView listView;
@@ -57,11 +56,14 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 
 	private static final int ITEM_DELETE = 0;
 	private static final int ITEM_SUMMARY = 1;
+
+	private static final int REQUEST_RESTORE = 0;
 	
 	private class CalculationAdapter extends CursorAdapter {
 
 		private final String summaryFormat = getResources().getString(R.string.expenses_summary_format);
 		private final String dateRangeFormat = getResources().getString(R.string.date_range_format);
+		private final DateHelper dateHelper = new DateHelper();
 
 		CalculationAdapter(Context context) {
 			super(context, null, 0);
@@ -76,38 +78,28 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 
 		@Override
 		public void bindView(View view, Context context, Cursor cursor) {
-			Calculation calculation = dataSource.fromCursor(cursor);
-
-			StringBuilder personNames = new StringBuilder();
-			for (Person person : calculation.getPersons()) {
-				if (personNames.length() > 0) {
-					personNames.append(", ");
-				}
-				personNames.append(person.getName());
-			}
+			CalculationSummary summary = summaryDataSource.fromCursor(cursor);
 
 			TextView titleView = (TextView) view.findViewById(R.id.calculation_title);
-			titleView.setText(calculation.getTitle());
+			titleView.setText(summary.getTitle());
 			TextView personsView = (TextView) view.findViewById(R.id.calculation_persons);
-			personsView.setText(personNames);
+			personsView.setText(summary.getPersonNames());
 
 			TextView datesView = (TextView) view.findViewById(R.id.calculation_dates);
 			TextView summaryView = (TextView) view.findViewById(R.id.calculation_summary);
 
-			List<Expense> expenses = calculation.getExpenses();
-			if (expenses.size() == 0) {
+			int count = summary.getExpenseCount();
+			if (count == 0 || !summary.hasDates()) {
 				datesView.setVisibility(View.GONE);
 				summaryView.setText(R.string.no_expenses);
 			} else {
-				DateFormat format = DateFormat.getDateInstance();
-				String firstDate = format.format(calculation.getFirstDate().getTime());
-				String lastDate = format.format(calculation.getLastDate().getTime());
+				String firstDate = dateHelper.format(summary.getFirstEpochDay());
+				String lastDate = dateHelper.format(summary.getLastEpochDay());
 				datesView.setText(String.format(dateRangeFormat, firstDate, lastDate));
 				datesView.setVisibility(View.VISIBLE);
 
-				int count = calculation.getExpenses().size();
-				CurrencyHelper helper = calculation.getMainCurrency().getCurrencyHelper();
-				String total = helper.format(calculation.getExpenseTotal());
+				CurrencyHelper helper = CurrencyHelper.get(summary.getMainCurrencyCode());
+				String total = helper.formatFixed(summary.getFixedExpenseTotal());
 				summaryView.setText(String.format(summaryFormat, count, total));
 			}
 		}
@@ -116,6 +108,9 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		dbHelper = DataBaseHelper.getInstance(this);
+		dataSource = new CalculationDataSource(dbHelper);
+		summaryDataSource = new SummaryDataSource(dbHelper);
 		supportRequestWindowFeature(WindowCompat.FEATURE_ACTION_BAR);
 
 		setContentView(R.layout.calculation_list);
@@ -131,7 +126,7 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 	}
 
 	private void refresh() {
-		cursor = dataSource.listAll();
+		cursor = summaryDataSource.listAll();
 		adapter.changeCursor(cursor);
 		listView.setAdapter(adapter);
 	}
@@ -139,9 +134,8 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 	@Override
 	public void onItemClick(AdapterView<?> l, View v, int position, long id) {
 		cursor.moveToPosition(position);
-		Calculation calculation = dataSource.fromCursor(cursor);
 		Intent intent = new Intent(this, ExpenseListActivity.class);
-		intent.putExtra(ExpenseListActivity.PARAM_CALCULATION_ID, calculation.getId());
+		intent.putExtra(ExpenseListActivity.PARAM_CALCULATION_ID, cursor.getLong(0));
 		startActivity(intent);
 	}
 
@@ -157,6 +151,15 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 			case R.id.new_calculation:
 				startActivity(new Intent(this, CalculationEditorActivity.class));
 				return true;
+			case R.id.backup:
+				BackupTask.backup(this);
+				return true;
+			case R.id.restore:
+				Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+				intent.setType("*/*");
+				intent.addCategory(Intent.CATEGORY_OPENABLE);
+				startActivityForResult(intent, REQUEST_RESTORE);
+				return true;
 			case R.id.about:
 				showAboutDialog();
 				return true;
@@ -170,8 +173,7 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 		if (v.getId() == R.id.calculation_list) {
 			AdapterView.AdapterContextMenuInfo info = (AdapterView.AdapterContextMenuInfo) menuInfo;
 			cursor.moveToPosition(info.position);
-			Calculation calculation = dataSource.fromCursor(cursor);
-			menu.setHeaderTitle(calculation.getTitle());
+			menu.setHeaderTitle(cursor.getString(1));
 			menu.add(0, ITEM_DELETE, 0, R.string.menu_delete);
 			menu.add(0, ITEM_SUMMARY, 0, R.string.calculation_summary);
 		}
@@ -184,7 +186,7 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 		long calculationId = cursor.getLong(0);
 
 		if (item.getItemId() == ITEM_DELETE) {
-			confirmAndDelete(dataSource.get(calculationId));
+			confirmAndDelete(calculationId, cursor.getString(1));
 			return true;
 		} else if (item.getItemId() == ITEM_SUMMARY) {
 			Intent intent = new Intent(this, SummaryActivity.class);
@@ -196,15 +198,15 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 		return true;
 	}
 
-	private void confirmAndDelete(final Calculation calculation) {
+	private void confirmAndDelete(final long calculationId, String title) {
 		AlertDialog.Builder dialog = new AlertDialog.Builder(this);
 		dialog.setIcon(android.R.drawable.ic_delete);
-		dialog.setTitle(calculation.getTitle());
+		dialog.setTitle(title);
 		dialog.setMessage(R.string.confirm_delete_calculation);
 		dialog.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
 			@Override
 			public void onClick(DialogInterface dialog, int which) {
-				dataSource.delete(calculation.getId());
+				dataSource.delete(calculationId);
 				refresh();
 			}
 		});
@@ -212,17 +214,38 @@ public class CalculationListActivity extends ActionBarActivity implements OnItem
 		dialog.show();
 	}
 
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+		if (requestCode == REQUEST_RESTORE && resultCode == RESULT_OK && data != null)
+			confirmAndRestore(data.getData());
+		else
+			super.onActivityResult(requestCode, resultCode, data);
+	}
+
+	private void confirmAndRestore(final Uri uri) {
+		AlertDialog.Builder dialog = new AlertDialog.Builder(this);
+		dialog.setTitle(R.string.restore);
+		dialog.setMessage(R.string.confirm_restore);
+		dialog.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
+			@Override
+			public void onClick(DialogInterface dialog, int which) {
+				BackupTask.restore(uri, CalculationListActivity.this, new Runnable() {
+					@Override
+					public void run() {
+						refresh();
+					}
+				});
+			}
+		});
+		dialog.setNegativeButton(android.R.string.no, null);
+		dialog.show();
+	}
+
 	private void showAboutDialog() {
 		AboutDialog about = new AboutDialog(this);
 		about.show();
 	}
 
-	@Override
-	protected void onPause() {
-		super.onPause();
-		dbHelper.close();
-	}
-
 	@Override
 	protected void onResume() {
 		refresh();
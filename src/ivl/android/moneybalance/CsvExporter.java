@@ -1,83 +1,195 @@
 package ivl.android.moneybalance;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import android.annotation.TargetApi;
+import android.app.ProgressDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.res.Resources;
 import android.media.MediaScannerConnection;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
 import android.util.Log;
 import android.widget.Toast;
-import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.dao.CalculationDataSource;
+import ivl.android.moneybalance.dao.DataBaseHelper;
+import ivl.android.moneybalance.data.ExpenseTable;
 import ivl.android.moneybalance.filter.CsvOutput;
 
-class CsvExporter {
+class CsvExporter extends AsyncTask<Void, Integer, String> {
 
 	static private final int MAX_FILENUM = 1000;
 
-	static void export(Calculation calculation, Context context) {
-		Resources res = context.getResources();
+	private final Context context;
+	private final Resources res;
+	private final long calculationId;
+
+	private ProgressDialog progressDialog;
+	private File csvFile;
+	private volatile boolean completed = false;
+
+	// Exports a calculation to a CSV file on external storage. Loading and
+	// writing happen on a worker thread behind a cancelable progress dialog.
+	// The file is written under a temporary name and renamed once complete,
+	// so a cancelled or failed export leaves no partial file behind.
+	static void export(long calculationId, Context context) {
+		new CsvExporter(calculationId, context).execute();
+	}
 
+	private CsvExporter(long calculationId, Context context) {
+		this.calculationId = calculationId;
+		this.context = context;
+		res = context.getResources();
+	}
+
+	@Override
+	protected void onPreExecute() {
+		progressDialog = new ProgressDialog(context);
+		progressDialog.setMessage(res.getString(R.string.export_progress));
+		progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		progressDialog.setIndeterminate(true);
+		progressDialog.setCancelable(true);
+		progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+			@Override
+			public void onCancel(DialogInterface dialog) {
+				cancel(false);
+			}
+		});
+		progressDialog.show();
+	}
+
+	// Returns null on success or cancellation, an error message otherwise.
+	@Override
+	protected String doInBackground(Void... params) {
 		File root = Environment.getExternalStorageDirectory(); 
-		if (!root.canWrite()) {
-			Toast.makeText(context, res.getString(R.string.export_error_no_permission), Toast.LENGTH_LONG).show();
-			return;
-		}
+		if (!root.canWrite())
+			return res.getString(R.string.export_error_no_permission);
 
 		File dir = new File(root, res.getString(R.string.app_name));
-		if (!dir.exists() && !dir.mkdir()) {
-			String message = String.format(res.getString(R.string.export_error_mkdir), dir.toString());
-			Toast.makeText(context, message , Toast.LENGTH_LONG).show();
-			return;
-		}
+		if (!dir.exists() && !dir.mkdir())
+			return String.format(res.getString(R.string.export_error_mkdir), dir.toString());
 
-		File csvFile = determineFileName(calculation, dir);
-		if (csvFile == null) {
-			Toast.makeText(context, res.getString(R.string.export_error_no_free_file), Toast.LENGTH_LONG).show();
-			return;
-		}
+		DataBaseHelper dbHelper = DataBaseHelper.getInstance(context);
+		ExpenseTable expenses = new CalculationDataSource(dbHelper).getExpenseTable(calculationId);
+		if (isCancelled())
+			return null;
+
+		csvFile = determineFileName(dir, expenses.getCalculation().getTitle(), ".csv");
+		if (csvFile == null)
+			return res.getString(R.string.export_error_no_free_file);
 
+		File tempFile = new File(dir, "." + csvFile.getName() + ".tmp");
 		try {
-			FileWriter writer = new FileWriter(csvFile);
-			CsvOutput csv = new CsvOutput(calculation);
-			writer.write(csv.toCsv());
-			writer.close();
+			CsvOutput csv = new CsvOutput(expenses);
+			csv.setProgressListener(new CsvOutput.ProgressListener() {
+				@Override
+				public boolean onProgress(int expensesWritten, int expenseCount) {
+					publishProgress(expensesWritten, expenseCount);
+					return !isCancelled();
+				}
+			});
 
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO)
-				triggerMediaRescan(csvFile, context);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+			try {
+				csv.write(writer);
+			} finally {
+				writer.close();
+			}
 
-			String message = String.format(res.getString(R.string.export_success), csvFile.toString());
-			Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+			if (!tempFile.renameTo(csvFile))
+				throw new IOException("Failed to rename " + tempFile);
+			completed = true;
+			return null;
+		} catch (InterruptedIOException e) {
+			tempFile.delete();
+			return null;
 		} catch (IOException e) {
+			tempFile.delete();
 			String message = String.format(res.getString(R.string.export_error_write_failed), csvFile.toString());
-			Toast.makeText(context, message + ":" + e.toString(), Toast.LENGTH_LONG).show();
 			Log.e("moneybalance", message, e);
+			return message + ":" + e.toString();
+		}
+	}
+
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		progressDialog.setIndeterminate(false);
+		progressDialog.setMax(values[1]);
+		progressDialog.setProgress(values[0]);
+	}
+
+	@Override
+	protected void onPostExecute(String error) {
+		dismissProgress();
+		if (error != null)
+			Toast.makeText(context, error, Toast.LENGTH_LONG).show();
+		else
+			exportDone();
+	}
+
+	@Override
+	protected void onCancelled() {
+		dismissProgress();
+		// the file may have been committed just before the cancellation
+		if (completed)
+			exportDone();
+		else
+			Toast.makeText(context, res.getString(R.string.export_cancelled), Toast.LENGTH_LONG).show();
+	}
+
+	private void exportDone() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO)
+			triggerMediaRescan(csvFile, context);
+
+		String message = String.format(res.getString(R.string.export_success), csvFile.toString());
+		Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+	}
+
+	private void dismissProgress() {
+		try {
+			progressDialog.dismiss();
+		} catch (IllegalArgumentException e) {
+			// the activity has gone away in the meantime
 		}
 	}
 
-	private static File determineFileName(Calculation calculation, File dir) {
-		String base = calculation.getTitle();
+	// Returns an unused file name in dir, listing the directory once instead
+	// of probing each candidate name.
+	static File determineFileName(File dir, String base, String extension) {
 		final char[] ILLEGAL_CHARS = { '\\', '/', '<', '>', '?', ':', '*', '|', '"', '\'' };
 		for (char illegal : ILLEGAL_CHARS)
 			base = base.replace(illegal, '_');
 
-		File file = new File(dir, base + ".csv");
-		if (!file.exists())
-			return file;
+		Set<String> existing = new HashSet<>();
+		String[] names = dir.list();
+		if (names != null)
+			existing.addAll(Arrays.asList(names));
+
+		String name = base + extension;
+		if (!existing.contains(name))
+			return new File(dir, name);
 
 		for (int i = 1; i < MAX_FILENUM; i++) {
-			file = new File(dir, String.format("%s (%d).csv", base, i));
-			if (!file.exists())
-				return file;
+			name = String.format("%s (%d)%s", base, i, extension);
+			if (!existing.contains(name))
+				return new File(dir, name);
 		}
 		return null;
 	}
 
 	@TargetApi(Build.VERSION_CODES.FROYO)
-	private static void triggerMediaRescan(File file, Context context) {
+	static void triggerMediaRescan(File file, Context context) {
 		MediaScannerConnection.scanFile(context, new String[] { file.getAbsolutePath() }, null, null);		
 	}
 
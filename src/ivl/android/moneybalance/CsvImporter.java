@@ -0,0 +1,170 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.Toast;
+import ivl.android.moneybalance.dao.CalculationDataSource;
+import ivl.android.moneybalance.dao.DataBaseHelper;
+import ivl.android.moneybalance.dao.ExpenseDataSource;
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.filter.CsvInput;
+
+class CsvImporter extends AsyncTask<Void, Integer, String> {
+
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	private final Context context;
+	private final Resources res;
+	private final long calculationId;
+	private final Uri uri;
+	private final Runnable onImported;
+
+	private ProgressDialog progressDialog;
+	private int imported = 0;
+	private int skipped = 0;
+	private int firstSkippedLine = 0;
+	private volatile boolean completed = false;
+
+	// Imports expenses from a CSV file into a calculation. Parsing and
+	// inserting happen on a worker thread; all rows go into the database in
+	// a single transaction, so a failed or cancelled import changes nothing.
+	// onImported is run on the UI thread after a successful import.
+	static void importFrom(Uri uri, long calculationId, Context context, Runnable onImported) {
+		new CsvImporter(uri, calculationId, context, onImported).execute();
+	}
+
+	private CsvImporter(Uri uri, long calculationId, Context context, Runnable onImported) {
+		this.uri = uri;
+		this.calculationId = calculationId;
+		this.context = context;
+		this.onImported = onImported;
+		res = context.getResources();
+	}
+
+	@Override
+	protected void onPreExecute() {
+		progressDialog = new ProgressDialog(context);
+		progressDialog.setMessage(res.getString(R.string.import_progress));
+		progressDialog.setIndeterminate(true);
+		progressDialog.setCancelable(true);
+		progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+			@Override
+			public void onCancel(DialogInterface dialog) {
+				cancel(false);
+			}
+		});
+		progressDialog.show();
+	}
+
+	// Returns null on success or cancellation, an error message otherwise.
+	@Override
+	protected String doInBackground(Void... params) {
+		DataBaseHelper dbHelper = DataBaseHelper.getInstance(context);
+		try {
+			Calculation calculation = new CalculationDataSource(dbHelper).get(calculationId);
+			ExpenseDataSource expenseDataSource = new ExpenseDataSource(dbHelper, calculation);
+
+			InputStream stream = context.getContentResolver().openInputStream(uri);
+			try {
+				CsvInput csv = new CsvInput(calculation, new InputStreamReader(stream, "UTF-8"));
+				ExpenseDataSource.BulkInsert bulk = expenseDataSource.beginBulkInsert();
+				try {
+					Expense expense;
+					while ((expense = csv.read()) != null) {
+						if (isCancelled())
+							return null;
+						bulk.add(expense);
+						if (bulk.getCount() % PROGRESS_INTERVAL == 0)
+							publishProgress(bulk.getCount());
+					}
+					bulk.setSuccessful();
+				} finally {
+					bulk.end();
+				}
+				imported = csv.getExpenseCount();
+				skipped = csv.getSkippedCount();
+				firstSkippedLine = csv.getFirstSkippedLine();
+				completed = true;
+			} finally {
+				stream.close();
+			}
+			return null;
+		} catch (IOException e) {
+			String message = String.format(res.getString(R.string.import_error_read_failed), uri.getLastPathSegment());
+			Log.e("moneybalance", message, e);
+			return message + ":" + e.toString();
+		}
+	}
+
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		progressDialog.setMessage(String.format(res.getString(R.string.import_progress_count), values[0]));
+	}
+
+	@Override
+	protected void onPostExecute(String error) {
+		dismissProgress();
+		if (error != null) {
+			Toast.makeText(context, error, Toast.LENGTH_LONG).show();
+			return;
+		}
+		importDone();
+	}
+
+	@Override
+	protected void onCancelled() {
+		dismissProgress();
+		// the transaction may have been committed just before the cancellation
+		if (completed)
+			importDone();
+		else
+			Toast.makeText(context, res.getString(R.string.import_cancelled), Toast.LENGTH_LONG).show();
+	}
+
+	private void importDone() {
+		String message;
+		if (skipped > 0)
+			message = String.format(res.getString(R.string.import_success_skipped), imported, skipped, firstSkippedLine);
+		else
+			message = String.format(res.getString(R.string.import_success), imported);
+		Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+
+		if (onImported != null)
+			onImported.run();
+	}
+
+	private void dismissProgress() {
+		try {
+			progressDialog.dismiss();
+		} catch (IllegalArgumentException e) {
+			// the activity has gone away in the meantime
+		}
+	}
+
+}
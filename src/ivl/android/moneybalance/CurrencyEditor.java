@@ -120,7 +120,7 @@ class CurrencyEditor {
 
 	private void setExchangeRateThis(double rate) {
 		java.util.Currency c = (java.util.Currency) currencyField.getSelectedItem();
-		CurrencyHelper helper = new CurrencyHelper(c);
+		CurrencyHelper helper = CurrencyHelper.get(c.getCurrencyCode());
 		thisCurrencyRate.setText(helper.format(rate, false));
 	}
 
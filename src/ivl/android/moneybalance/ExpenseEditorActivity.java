@@ -21,7 +21,9 @@ import ivl.android.moneybalance.dao.DataBaseHelper;
 import ivl.android.moneybalance.dao.ExpenseDataSource;
 import ivl.android.moneybalance.data.Currency;
 import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.EpochDay;
 import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.Money;
 import ivl.android.moneybalance.data.Person;
 
 import java.text.DateFormat;
@@ -29,10 +31,8 @@ import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import android.app.AlertDialog;
@@ -76,9 +76,9 @@ public class ExpenseEditorActivity extends ActionBarActivity {
 	private Mode mode;
 	private Expense expense;
 
-	private final DataBaseHelper dbHelper = new DataBaseHelper(this);
+	private DataBaseHelper dbHelper;
 
-	private final CalculationDataSource calculationDataSource = new CalculationDataSource(dbHelper);
+	private CalculationDataSource calculationDataSource;
 	private ExpenseDataSource expenseDataSource;
 
 	private Calculation calculation;
@@ -96,6 +96,9 @@ public class ExpenseEditorActivity extends ActionBarActivity {
 		TextView result;
 	}
 	private CustomSplitEntry[] customSplitEntries;
+	// reused on every keystroke
+	private double[] splitWeights;
+	private long[] splitShares;
 
 	private CheckBox customSplitCheckBox;
 	private TableLayout customSplitTable;
@@ -105,6 +108,8 @@ public class ExpenseEditorActivity extends ActionBarActivity {
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		dbHelper = DataBaseHelper.getInstance(this);
+		calculationDataSource = new CalculationDataSource(dbHelper);
 		supportRequestWindowFeature(WindowCompat.FEATURE_ACTION_BAR);
 
 		setContentView(R.layout.expense_editor);
@@ -210,19 +215,21 @@ public class ExpenseEditorActivity extends ActionBarActivity {
 	}
 
 	private void createCustomSplitRows() {
-		Map<Long, Double> weights = expense.getSplitWeights();
+		double[] weights = expense.getWeights();
 		customSplitEntries = new CustomSplitEntry[persons.size()];
+		splitWeights = new double[persons.size()];
+		splitShares = new long[persons.size()];
 		int dynamicId = 0;
 
 		LayoutInflater inflater = getLayoutInflater();
 		for (int i = 0; i < persons.size(); i++) {
 			Person person = persons.get(i);
 			boolean enabled = true;
-			Double weight = 1.0;
+			double weight = 1.0;
 
 			if (weights != null) {
-				Double w = weights.get(person.getId());
-				if (w != null)
+				double w = expense.getWeight(i);
+				if (w != 0)
 					weight = w;
 				else
 					enabled = false;
@@ -264,20 +271,22 @@ public class ExpenseEditorActivity extends ActionBarActivity {
 			for (CustomSplitEntry customSplitEntry : customSplitEntries)
 				customSplitEntry.result.setText("");
 
-			double[] weights = new double[customSplitEntries.length];
 			double weightSum = 0;
 			for (int i = 0; i < customSplitEntries.length; i++) {
-				weights[i] = 0;
+				splitWeights[i] = 0;
 				if (customSplitEntries[i].enabled.isChecked())
-					weights[i] = getWeight(i);
-				weightSum += weights[i];
+					splitWeights[i] = getWeight(i);
+				weightSum += splitWeights[i];
 			}
+			if (weightSum <= 0)
+				return;
 
-			double amount = getAmount();
+			// split as the saved expense will be
+			long amount = Money.toFixed(getAmount(), expense.getCurrency().getDecimalFactor());
+			Money.split(amount, splitWeights, customSplitEntries.length, splitShares);
 			for (int i = 0; i < customSplitEntries.length; i++) {
-				if (customSplitEntries[i].enabled.isChecked() && weightSum > 0) {
-					double share = (weights[i] / weightSum * amount);
-					String formatted = currencyHelper.format(share);
+				if (customSplitEntries[i].enabled.isChecked()) {
+					String formatted = currencyHelper.formatFixed(splitShares[i]);
 					customSplitEntries[i].result.setText(formatted);
 				}
 			}
@@ -338,20 +347,11 @@ public class ExpenseEditorActivity extends ActionBarActivity {
     	}
     }
 
-	@Override
-	protected void onPause() {
-		super.onPause();
-		dbHelper.close();
-	}
-
 	private void pickDate() {
 		final DatePickerDialog.OnDateSetListener onDateSet = new DatePickerDialog.OnDateSetListener() {
 			@Override
 			public void onDateSet(DatePicker view, int year, int month, int day) {
-				Calendar date = Calendar.getInstance();
-				date.clear();
-				date.set(year, month, day);
-				expense.setDate(date);
+				expense.setEpochDay(EpochDay.of(year, month + 1, day));
 				updateDate();
 			}
 		};
@@ -477,14 +477,14 @@ public class ExpenseEditorActivity extends ActionBarActivity {
 		expense.setTitle(getExpenseTitle());
 		expense.setAmount(getAmount());
 
-		Map<Long, Double> weights = null;
+		double[] weights = null;
 		if (customSplitCheckBox.isChecked()) {
-			weights = new HashMap<>();
+			weights = new double[customSplitEntries.length];
 			for (int i = 0; i < customSplitEntries.length; i++)
 				if (customSplitEntries[i].enabled.isChecked())
-					weights.put(persons.get(i).getId(), getWeight(i));
+					weights[i] = getWeight(i);
 		}
-		expense.setSplitWeights(weights);
+		expense.setWeights(weights);
 
 		if (mode == Mode.EDIT_EXPENSE)
 			expenseDataSource.update(expense);
@@ -21,17 +21,15 @@ import ivl.android.moneybalance.dao.DataBaseHelper;
 import ivl.android.moneybalance.dao.ExpenseDataSource;
 import ivl.android.moneybalance.data.Currency;
 import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.EpochDay;
 import ivl.android.moneybalance.data.Expense;
 import ivl.android.moneybalance.data.Person;
 
-import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 import android.content.Context;
 import android.content.Intent;
@@ -58,12 +56,14 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 
 	private long calculationId;
 
-	private final DataBaseHelper dbHelper = new DataBaseHelper(this);
-	private final CalculationDataSource calculationDataSource = new CalculationDataSource(dbHelper);
+	private DataBaseHelper dbHelper;
+	private CalculationDataSource calculationDataSource;
 	private ExpenseDataSource expenseDataSource;
 
 	private static final int ITEM_DELETE = 0;
 
+	private static final int REQUEST_IMPORT = 0;
+
 	private ExpenseAdapter adapter;
 
 	private class ExpenseAdapter extends BaseExpandableListAdapter {
@@ -74,8 +74,13 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 
 		private final Map<Person, List<Expense>> expensesByPerson = new HashMap<>();
 
-		private final Set<Calendar> dates = new TreeSet<>();
-		private final Map<Calendar, List<Expense>> expensesByDate = new HashMap<>();
+		// epoch days in ascending order
+		private final List<Integer> dates = new ArrayList<>();
+		private final Map<Integer, List<Expense>> expensesByDate = new HashMap<>();
+		private final DateHelper dateHelper = new DateHelper();
+
+		// reused when showing uneven splits
+		private long[] shares;
 
 		private final LayoutInflater inflater;
 		private final String groupSummaryFormat = getResources().getString(R.string.expenses_summary_format);
@@ -99,7 +104,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				List<Expense> byPersonList = expensesByPerson.get(expense.getPerson());
 				byPersonList.add(expense);
 
-				Calendar date = expense.getDate();
+				Integer date = expense.getEpochDay();
 				List<Expense> byDateList = expensesByDate.get(date);
 				if (byDateList == null) {
 					byDateList = new ArrayList<>();
@@ -108,6 +113,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				}
 				byDateList.add(expense);
 			}
+			Collections.sort(dates);
 
 			notifyDataSetChanged();
 		}
@@ -143,8 +149,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				Person person = (Person) getGroup(groupPosition);
 				return person.getId();
 			} else {
-				Calendar date = (Calendar) getGroup(groupPosition);
-				return date.getTimeInMillis();
+				return (Integer) getGroup(groupPosition);
 			}
 		}
 
@@ -153,7 +158,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 			if (groupByPerson) {
 				return calculation.getPersons().get(groupPosition);
 			} else {
-				return dates.toArray()[groupPosition];
+				return dates.get(groupPosition);
 			}
 		}
 
@@ -186,23 +191,23 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				holder.nameView.setText(person.getName());
 				expenses = expensesByPerson.get(person);
 			} else {
-				Calendar date = (Calendar) getGroup(groupPosition);
-				DateFormat format = DateFormat.getDateInstance();
-				holder.nameView.setText(format.format(date.getTime()));
+				Integer date = (Integer) getGroup(groupPosition);
+				holder.nameView.setText(dateHelper.format(date));
 				expenses = expensesByDate.get(date);
 			}
 
 			int count = 0;
-			double total = 0;
+			long total = 0;
 			for (Expense expense : expenses) {
 				count++;
-				total += expense.getExchangedAmount();
+				total += expense.getExchangedFixedAmount();
 			}
 
 			if (count == 0) {
 				holder.summaryView.setText(R.string.no_expenses);
 			} else {
-				String totalStr = calculation.getMainCurrency().getCurrencyHelper().format(total);
+				Currency mainCurrency = calculation.getMainCurrency();
+				String totalStr = mainCurrency.getCurrencyHelper().formatFixed(total);
 				String summary = String.format(groupSummaryFormat, count, totalStr);
 				holder.summaryView.setText(summary);
 			}
@@ -214,7 +219,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 						Person person = (Person) getGroup(groupPosition);
 						addExpenseForPerson(person.getId());
 					} else {
-						Calendar date = (Calendar) getGroup(groupPosition);
+						Integer date = (Integer) getGroup(groupPosition);
 						addExpenseForDate(date);
 					}
 				}
@@ -230,7 +235,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				List<Expense> list = expensesByPerson.get(person);
 				return list.size();
 			} else {
-				Calendar date = (Calendar) getGroup(groupPosition);
+				Integer date = (Integer) getGroup(groupPosition);
 				List<Expense> list = expensesByDate.get(date);
 				return list.size();
 			}
@@ -249,7 +254,7 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				List<Expense> list = expensesByPerson.get(person);
 				return list.get(childPosition);
 			} else {
-				Calendar date = (Calendar) getGroup(groupPosition);
+				Integer date = (Integer) getGroup(groupPosition);
 				List<Expense> list = expensesByDate.get(date);
 				return list.get(childPosition);
 			}
@@ -286,19 +291,17 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 			CurrencyHelper currencyHelper = currency.getCurrencyHelper();
 
 			holder.titleView.setText(expense.getTitle());
-			holder.amountView.setText(currencyHelper.format(expense.getAmount()));
+			holder.amountView.setText(currencyHelper.formatFixed(expense.getFixedAmount()));
 			if (expense.getCurrency().equals(calculation.getMainCurrency())) {
 				holder.exchangedView.setVisibility(View.GONE);
 			} else {
 				CurrencyHelper mainCurrencyHelper = calculation.getMainCurrency().getCurrencyHelper();
-				double exchanged = expense.getExchangedAmount();
 				holder.exchangedView.setVisibility(View.VISIBLE);
-				holder.exchangedView.setText(mainCurrencyHelper.format(exchanged));
+				holder.exchangedView.setText(mainCurrencyHelper.formatFixed(expense.getExchangedFixedAmount()));
 			}
 
 			if (groupByPerson) {
-				DateFormat format = DateFormat.getDateInstance();
-				holder.details1View.setText(format.format(expense.getDate().getTime()));
+				holder.details1View.setText(dateHelper.format(expense.getEpochDay()));
 			} else {
 				Person person = expense.getPerson();
 				holder.details1View.setText(person.getName());
@@ -306,15 +309,17 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 
 			if (expense.isUnevenSplit()) {
 				List<Person> persons = calculation.getPersons();
-				List<Double> shares = expense.getShares(persons);
+				if (shares == null || shares.length < persons.size())
+					shares = new long[persons.size()];
+				expense.getFixedShares(shares);
 				StringBuilder msg = new StringBuilder();
 				for (int i = 0; i < persons.size(); i++) {
-					if (shares.get(i) > 0) {
+					if (shares[i] > 0) {
 						Person person = persons.get(i);
 						if (msg.length() > 0)
 							msg.append("; ");
-						String shareStr = currencyHelper.format(shares.get(i));
-						msg.append(String.format("%s: %s", person.getName(), shareStr));
+						msg.append(person.getName()).append(": ");
+						currencyHelper.appendFixed(msg, shares[i], true);
 					}
 				}
 
@@ -331,6 +336,8 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		dbHelper = DataBaseHelper.getInstance(this);
+		calculationDataSource = new CalculationDataSource(dbHelper);
 		supportRequestWindowFeature(WindowCompat.FEATURE_ACTION_BAR);
 
 		setContentView(R.layout.expense_list);
@@ -384,13 +391,33 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 				startActivity(intent);
 				return true;
 			case R.id.export_calculation:
-				CsvExporter.export(calculationDataSource.get(calculationId), this);
+				CsvExporter.export(calculationId, this);
+				return true;
+			case R.id.import_calculation:
+				intent = new Intent(Intent.ACTION_GET_CONTENT);
+				intent.setType("text/*");
+				intent.addCategory(Intent.CATEGORY_OPENABLE);
+				startActivityForResult(intent, REQUEST_IMPORT);
 				return true;
 			default:
 				return super.onOptionsItemSelected(item);
 		}
 	}
 
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+		if (requestCode == REQUEST_IMPORT && resultCode == RESULT_OK && data != null) {
+			CsvImporter.importFrom(data.getData(), calculationId, this, new Runnable() {
+				@Override
+				public void run() {
+					refresh();
+				}
+			});
+		} else {
+			super.onActivityResult(requestCode, resultCode, data);
+		}
+	}
+
 	@Override
 	public boolean onChildClick(ExpandableListView parent, View v, int groupPosition, int childPosition, long id) {
 		Expense expense = (Expense) adapter.getChild(groupPosition, childPosition);
@@ -432,12 +459,6 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 		return true;
 	}
 
-	@Override
-	protected void onPause() {
-		super.onPause();
-		dbHelper.close();
-	}
-
 	@Override
 	protected void onResume() {
 		refresh();
@@ -451,10 +472,10 @@ public class ExpenseListActivity extends ActionBarActivity implements OnChildCli
 		startActivity(intent);
 	}
 
-	private void addExpenseForDate(Calendar date) {
+	private void addExpenseForDate(int epochDay) {
 		Intent intent = new Intent(this, ExpenseEditorActivity.class);
 		intent.putExtra(ExpenseEditorActivity.PARAM_CALCULATION_ID, calculationId);
-		intent.putExtra(ExpenseEditorActivity.PARAM_DATE, date.getTimeInMillis());
+		intent.putExtra(ExpenseEditorActivity.PARAM_DATE, EpochDay.toMillis(epochDay));
 		startActivity(intent);
 	}
 
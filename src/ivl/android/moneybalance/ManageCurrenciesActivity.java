@@ -36,8 +36,10 @@ public class ManageCurrenciesActivity extends ActionBarActivity {
 
 	public static final String PARAM_CALCULATION_ID = "calculationId";
 
-	private final DataBaseHelper dbHelper = new DataBaseHelper(this);
-	private final CalculationDataSource calculationDataSource = new CalculationDataSource(dbHelper);
+	private static final int REQUEST_IMPORT_RATES = 0;
+
+	private DataBaseHelper dbHelper;
+	private CalculationDataSource calculationDataSource;
 	private Calculation calculation;
 
 	private class CurrencyEntry {
@@ -82,7 +84,7 @@ public class ManageCurrenciesActivity extends ActionBarActivity {
 			if (position < additionalCurrencies.size()) {
 				final Currency thisCurrency = additionalCurrencies.get(position).currency;
 				java.util.Currency newMainCurrency = (java.util.Currency) mainCurrencyField.getSelectedItem();
-				CurrencyHelper mainCurrencyHelper = new CurrencyHelper(newMainCurrency);
+				CurrencyHelper mainCurrencyHelper = CurrencyHelper.get(newMainCurrency.getCurrencyCode());
 
 				String text = String.format("%s (%s = %s)",	thisCurrency.getCurrencyCode(),
 								thisCurrency.getCurrencyHelper().format(thisCurrency.getExchangeRateThis()),
@@ -123,6 +125,8 @@ public class ManageCurrenciesActivity extends ActionBarActivity {
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		dbHelper = DataBaseHelper.getInstance(this);
+		calculationDataSource = new CalculationDataSource(dbHelper);
 		supportRequestWindowFeature(WindowCompat.FEATURE_ACTION_BAR);
 
 		setContentView(R.layout.manage_currencies);
@@ -164,11 +168,34 @@ public class ManageCurrenciesActivity extends ActionBarActivity {
 			case R.id.menu_save:
 				doSave();
 				return true;
+			case R.id.import_rates:
+				Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+				intent.setType("*/*");
+				intent.addCategory(Intent.CATEGORY_OPENABLE);
+				startActivityForResult(intent, REQUEST_IMPORT_RATES);
+				return true;
 			default:
 				return super.onOptionsItemSelected(item);
 		}
 	}
 
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+		if (requestCode == REQUEST_IMPORT_RATES && resultCode == RESULT_OK && data != null) {
+			// rates are imported relative to the selected main currency
+			java.util.Currency newMainCurrency = (java.util.Currency) mainCurrencyField.getSelectedItem();
+			calculation.setMainCurrencyCode(newMainCurrency.getCurrencyCode());
+			RateImporter.importFrom(data.getData(), calculation, this, new Runnable() {
+				@Override
+				public void run() {
+					update();
+				}
+			});
+		} else {
+			super.onActivityResult(requestCode, resultCode, data);
+		}
+	}
+
 	private void update() {
 		additionalCurrencies.clear();
 		java.util.Currency newMainCurrency = (java.util.Currency) mainCurrencyField.getSelectedItem();
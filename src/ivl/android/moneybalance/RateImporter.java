@@ -0,0 +1,127 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.Toast;
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.filter.ReferenceRateInput;
+
+class RateImporter extends AsyncTask<Void, Void, String> {
+
+	private final Context context;
+	private final Resources res;
+	private final Uri uri;
+	private final ReferenceRateInput input;
+	private final Runnable onImported;
+
+	private ProgressDialog progressDialog;
+
+	// Reads exchange rates from a reference rate file and sets them on the
+	// currencies of a calculation, which is not saved. The file is parsed on
+	// a worker thread; the calculation is only changed on the UI thread,
+	// after which onImported is run.
+	static void importFrom(Uri uri, Calculation calculation, Context context, Runnable onImported) {
+		new RateImporter(uri, calculation, context, onImported).execute();
+	}
+
+	private RateImporter(Uri uri, Calculation calculation, Context context, Runnable onImported) {
+		this.uri = uri;
+		this.context = context;
+		this.onImported = onImported;
+		res = context.getResources();
+		// takes what it needs from the calculation right away
+		input = new ReferenceRateInput(calculation);
+	}
+
+	@Override
+	protected void onPreExecute() {
+		progressDialog = new ProgressDialog(context);
+		progressDialog.setMessage(res.getString(R.string.import_progress));
+		progressDialog.setIndeterminate(true);
+		progressDialog.setCancelable(true);
+		progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+			@Override
+			public void onCancel(DialogInterface dialog) {
+				cancel(false);
+			}
+		});
+		progressDialog.show();
+	}
+
+	// Returns null on success or cancellation, an error message otherwise.
+	@Override
+	protected String doInBackground(Void... params) {
+		try {
+			InputStream stream = context.getContentResolver().openInputStream(uri);
+			try {
+				input.read(new InputStreamReader(stream, "UTF-8"));
+			} finally {
+				stream.close();
+			}
+			return null;
+		} catch (IOException e) {
+			String message = String.format(res.getString(R.string.import_error_read_failed), uri.getLastPathSegment());
+			Log.e("moneybalance", message, e);
+			return message + ":" + e.toString();
+		}
+	}
+
+	@Override
+	protected void onPostExecute(String error) {
+		dismissProgress();
+		if (error != null) {
+			Toast.makeText(context, error, Toast.LENGTH_LONG).show();
+			return;
+		}
+
+		input.apply();
+		String message = String.format(res.getString(R.string.import_rates_success), input.getUpdatedCount(), input.getRateCount());
+		if (!input.getMissingCodes().isEmpty())
+			message += " " + String.format(res.getString(R.string.import_rates_missing), TextUtils.join(", ", input.getMissingCodes()));
+		Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+
+		if (onImported != null)
+			onImported.run();
+	}
+
+	@Override
+	protected void onCancelled() {
+		dismissProgress();
+		Toast.makeText(context, res.getString(R.string.import_cancelled), Toast.LENGTH_LONG).show();
+	}
+
+	private void dismissProgress() {
+		try {
+			progressDialog.dismiss();
+		} catch (IllegalArgumentException e) {
+			// the activity has gone away in the meantime
+		}
+	}
+
+}
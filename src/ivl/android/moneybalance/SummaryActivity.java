@@ -16,11 +16,12 @@
  */
 package ivl.android.moneybalance;
 
-import ivl.android.moneybalance.dao.CalculationDataSource;
+import ivl.android.moneybalance.dao.BalanceDataSource;
 import ivl.android.moneybalance.dao.DataBaseHelper;
-import ivl.android.moneybalance.data.Calculation;
-import ivl.android.moneybalance.data.Expense;
-import ivl.android.moneybalance.data.Person;
+import ivl.android.moneybalance.dao.SummaryDataSource;
+import ivl.android.moneybalance.data.Balance;
+import ivl.android.moneybalance.data.CalculationSummary;
+import ivl.android.moneybalance.data.Settlement;
 
 import java.text.DateFormat;
 import java.util.List;
@@ -38,51 +39,42 @@ public class SummaryActivity extends Activity {
 
 	public static final String PARAM_CALCULATION_ID = "calculationId";
 
-	private final DataBaseHelper dbHelper = new DataBaseHelper(this);
-	private final CalculationDataSource calculationDataSource = new CalculationDataSource(dbHelper);
+	private static final long SETTLEMENT_TIME_BUDGET = 200;
+
+	private DataBaseHelper dbHelper;
+	private SummaryDataSource summaryDataSource;
+	private BalanceDataSource balanceDataSource;
 	private CurrencyHelper currencyHelper;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		dbHelper = DataBaseHelper.getInstance(this);
+		summaryDataSource = new SummaryDataSource(dbHelper);
+		balanceDataSource = new BalanceDataSource(dbHelper);
 		setContentView(R.layout.summary);
 
 		Intent intent = getIntent();
 		long calculationId = intent.getLongExtra(PARAM_CALCULATION_ID, -1);
-		Calculation calculation = calculationDataSource.get(calculationId);
-		currencyHelper = calculation.getMainCurrency().getCurrencyHelper();
-		List<Person> persons = calculation.getPersons();
-		List<Expense> expenses = calculation.getExpenses();
+		CalculationSummary summary = summaryDataSource.get(calculationId);
+		currencyHelper = CurrencyHelper.get(summary.getMainCurrencyCode());
+		List<Balance> balances = balanceDataSource.listByCalculation(calculationId);
 
-		if (expenses.isEmpty()) {
+		if (summary.getExpenseCount() == 0) {
 			TextView noExpensesView = (TextView) findViewById(R.id.no_expenses);
 			noExpensesView.setVisibility(View.VISIBLE);
 			TableLayout summaryTable = (TableLayout) findViewById(R.id.summary_table);
 			summaryTable.setVisibility(View.GONE);
 		} else {
-			setSummary(calculation);
+			setSummary(summary);
 		}
 
-		double[] totalExpenses = new double[persons.size()];
-		double[] totalConsumption = new double[persons.size()];
-
-		for (Expense expense : expenses) {
-			List<Double> shares = expense.getExchangedShares(persons);
-			for (int i = 0; i < persons.size(); i++) {
-				if (persons.get(i).equals(expense.getPerson()))
-					totalExpenses[i] += expense.getExchangedAmount();
-				totalConsumption[i] += shares.get(i);
-			}
-		}
-
-		setTitle(calculation.getTitle());
+		setTitle(summary.getTitle());
 
 		TableLayout table = (TableLayout) findViewById(R.id.results_table);
 		LayoutInflater inflater = getLayoutInflater();
 
-		for (int i = 0; i < persons.size(); i++) {
-			Person person = persons.get(i);
-
+		for (Balance balance : balances) {
 			TableRow row = (TableRow) inflater.inflate(R.layout.summary_row, table, false);
 			table.addView(row);
 			TextView nameView = (TextView) row.findViewById(R.id.name);
@@ -90,18 +82,48 @@ public class SummaryActivity extends Activity {
 			TextView sumConsumption = (TextView) row.findViewById(R.id.sum_consumption);
 			TextView resultView = (TextView) row.findViewById(R.id.result);
 
-			nameView.setText(person.getName() + ":");
-			sumExpenses.setText(currencyHelper.format(totalExpenses[i]));
-			sumConsumption.setText(currencyHelper.format(totalConsumption[i]));
+			nameView.setText(balance.getPersonName() + ":");
+			sumExpenses.setText(currencyHelper.formatFixed(balance.getPaid()));
+			sumConsumption.setText(currencyHelper.formatFixed(balance.getConsumed()));
 
-			double result = totalExpenses[i] - totalConsumption[i];
+			long result = balance.getNet();
 			int color = getResources().getColor(result >= 0 ? R.color.result_positive : R.color.result_negative);
-			resultView.setText(currencyHelper.format(result));
+			resultView.setText(currencyHelper.formatFixed(result));
 			resultView.setTextColor(color);
 		}
+
+		setTransfers(balances);
 	}
 
-	private void setSummary(Calculation calculation) {
+	private void setTransfers(List<Balance> balances) {
+		long[] net = new long[balances.size()];
+		for (int i = 0; i < net.length; i++)
+			net[i] = balances.get(i).getNet();
+		List<Settlement.Transfer> transfers = Settlement.settle(net, SETTLEMENT_TIME_BUDGET);
+
+		if (transfers.isEmpty()) {
+			TextView settledView = (TextView) findViewById(R.id.settled);
+			settledView.setVisibility(View.VISIBLE);
+		}
+
+		TableLayout table = (TableLayout) findViewById(R.id.transfers_table);
+		LayoutInflater inflater = getLayoutInflater();
+		String transferFormat = getResources().getString(R.string.transfer_format);
+
+		for (Settlement.Transfer transfer : transfers) {
+			TableRow row = (TableRow) inflater.inflate(R.layout.transfer_row, table, false);
+			table.addView(row);
+			TextView namesView = (TextView) row.findViewById(R.id.transfer_names);
+			TextView amountView = (TextView) row.findViewById(R.id.transfer_amount);
+
+			String from = balances.get(transfer.getFrom()).getPersonName();
+			String to = balances.get(transfer.getTo()).getPersonName();
+			namesView.setText(String.format(transferFormat, from, to));
+			amountView.setText(currencyHelper.formatFixed(transfer.getAmount()));
+		}
+	}
+
+	private void setSummary(CalculationSummary summary) {
 		TextView firstDateView = (TextView) findViewById(R.id.first_date);
 		TextView lastDateView = (TextView) findViewById(R.id.last_date);
 		TextView durationView = (TextView) findViewById(R.id.duration);
@@ -109,20 +131,15 @@ public class SummaryActivity extends Activity {
 		TextView totalAmountView = (TextView) findViewById(R.id.total_amount);
 
 		DateFormat format = DateFormat.getDateInstance();
-		firstDateView.setText(format.format(calculation.getFirstDate().getTime()));
-		lastDateView.setText(format.format(calculation.getLastDate().getTime()));
+		firstDateView.setText(format.format(summary.getFirstDate().getTime()));
+		lastDateView.setText(format.format(summary.getLastDate().getTime()));
 
-		long duration = calculation.getDuration();
+		long duration = summary.getDuration();
 		String daysFormat = getResources().getString(duration == 1 ? R.string.day_format : R.string.days_format);
-		durationView.setText(String.format(daysFormat, calculation.getDuration()));
-
-		double totalAmount = 0;
-		List<Expense> expenses = calculation.getExpenses();
-		for (Expense expense : expenses)
-			totalAmount += expense.getExchangedAmount();
+		durationView.setText(String.format(daysFormat, duration));
 
-		numExpensesView.setText(Integer.toString(expenses.size()));
-		totalAmountView.setText(currencyHelper.format(totalAmount));
+		numExpensesView.setText(Integer.toString(summary.getExpenseCount()));
+		totalAmountView.setText(currencyHelper.formatFixed(summary.getFixedExpenseTotal()));
 	}
 
 }
@@ -24,7 +24,9 @@ import java.util.List;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 public abstract class AbstractDataSource<T extends DataObject> {
 
@@ -32,37 +34,97 @@ public abstract class AbstractDataSource<T extends DataObject> {
 	private final String table;
 	private final String[] columns;
 
+	// all columns except the leading _id, in the order they are bound
+	private final String[] writeColumns;
+	private final String insertSql;
+	private final String updateSql;
+	private final String deleteSql;
+
 	AbstractDataSource(DataBaseHelper dbHelper, String table, String[] columns) {
 		this.dbHelper = dbHelper; 
 		this.table = table;
 		this.columns = columns;
+
+		writeColumns = new String[columns.length - 1];
+		System.arraycopy(columns, 1, writeColumns, 0, writeColumns.length);
+
+		StringBuilder insert = new StringBuilder("INSERT INTO " + table + " (");
+		StringBuilder values = new StringBuilder(") VALUES (");
+		StringBuilder update = new StringBuilder("UPDATE " + table + " SET ");
+		for (int i = 0; i < writeColumns.length; i++) {
+			String separator = (i > 0 ? ", " : "");
+			insert.append(separator).append(writeColumns[i]);
+			values.append(separator).append('?');
+			update.append(separator).append(writeColumns[i]).append(" = ?");
+		}
+		insertSql = insert.append(values).append(')').toString();
+		updateSql = update.append(" WHERE " + DataBaseHelper.COLUMN_ID + " = ?").toString();
+		deleteSql = "DELETE FROM " + table + " WHERE " + DataBaseHelper.COLUMN_ID + " = ?";
 	}
 
 	SQLiteDatabase getDatabase() {
 		return dbHelper.getWritableDatabase();
 	}
 
-	long insert(T object) {
-		long insertId = getDatabase().insert(
-				table,
-				null,
-				toContentValues(object));
+	WriteBatch beginBatch() {
+		return new WriteBatch(getDatabase());
+	}
+
+	private void bindValues(SQLiteStatement statement, ContentValues values) {
+		for (int i = 0; i < writeColumns.length; i++)
+			DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(writeColumns[i]));
+	}
+
+	long insert(WriteBatch batch, T object) {
+		SQLiteStatement statement = batch.getStatement(insertSql);
+		bindValues(statement, toContentValues(object));
+		long insertId = statement.executeInsert();
 		object.setId(insertId);
 		return insertId;
 	}
 
+	void update(WriteBatch batch, T object) {
+		SQLiteStatement statement = batch.getStatement(updateSql);
+		bindValues(statement, toContentValues(object));
+		statement.bindLong(writeColumns.length + 1, object.getId());
+		statement.execute();
+	}
+
+	void delete(WriteBatch batch, long id) {
+		SQLiteStatement statement = batch.getStatement(deleteSql);
+		statement.bindLong(1, id);
+		statement.execute();
+	}
+
+	long insert(T object) {
+		WriteBatch batch = beginBatch();
+		try {
+			long insertId = insert(batch, object);
+			batch.setSuccessful();
+			return insertId;
+		} finally {
+			batch.end();
+		}
+	}
+
 	void update(T object) {
-		long id = object.getId();
-		getDatabase().update(
-				table,
-				toContentValues(object),
-				DataBaseHelper.COLUMN_ID + " = ?", new String[] { Long.toString(id) });
+		WriteBatch batch = beginBatch();
+		try {
+			update(batch, object);
+			batch.setSuccessful();
+		} finally {
+			batch.end();
+		}
 	}
 
 	void delete(long id) {
-		getDatabase().delete(
-				table,
-				DataBaseHelper.COLUMN_ID + " = ?", new String[] { Long.toString(id) });		
+		WriteBatch batch = beginBatch();
+		try {
+			delete(batch, id);
+			batch.setSuccessful();
+		} finally {
+			batch.end();
+		}
 	}
 
 	public T get(long id) {
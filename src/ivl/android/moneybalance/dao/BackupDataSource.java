@@ -0,0 +1,223 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.dao;
+
+import ivl.android.moneybalance.filter.BackupInput;
+import ivl.android.moneybalance.filter.BackupOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+// Backs up and restores the whole database. The five data tables are
+// streamed row by row in primary key order; integer columns that grow or
+// repeat from row to row (ids, references, dates) are written as deltas.
+// Summaries and balances are derived data and not part of a backup: restore
+// rebuilds the summaries and leaves the ledgers to be rebuilt on demand.
+public class BackupDataSource {
+
+	private final DataBaseHelper dbHelper;
+	private final SummaryDataSource summaryDataSource;
+
+	// column encodings
+	private static final int INTEGER = 0;
+	private static final int DELTA = 1;
+	private static final int TEXT = 2;
+	private static final int REAL = 3;
+	private static final int WEIGHT = 4;
+	private static final int DATE = 5;
+
+	private static class Table {
+		final String name;
+		final String[] columns;
+		final int[] encodings;
+		final String orderBy;
+		// the database version that introduced the table; older backups
+		// don't contain it
+		final int since;
+
+		Table(String name, String[] columns, int[] encodings, String orderBy) {
+			this(name, columns, encodings, orderBy, 1);
+		}
+
+		Table(String name, String[] columns, int[] encodings, String orderBy, int since) {
+			this.name = name;
+			this.columns = columns;
+			this.encodings = encodings;
+			this.orderBy = orderBy;
+			this.since = since;
+		}
+	}
+
+	// in the order they are written; parents before children
+	private static final Table[] TABLES = {
+		new Table(DataBaseHelper.TABLE_CALCULATIONS,
+				new String[] { DataBaseHelper.COLUMN_ID, DataBaseHelper.COLUMN_TITLE, DataBaseHelper.COLUMN_CURRENCY },
+				new int[] { DELTA, TEXT, TEXT },
+				DataBaseHelper.COLUMN_ID),
+		new Table(DataBaseHelper.TABLE_CURRENCIES,
+				new String[] { DataBaseHelper.COLUMN_ID, DataBaseHelper.COLUMN_CALCULATION_ID, DataBaseHelper.COLUMN_CURRENCY_CODE,
+						DataBaseHelper.COLUMN_RATE_THIS, DataBaseHelper.COLUMN_RATE_MAIN },
+				new int[] { DELTA, DELTA, TEXT, REAL, REAL },
+				DataBaseHelper.COLUMN_ID),
+		new Table(DataBaseHelper.TABLE_PERSONS,
+				new String[] { DataBaseHelper.COLUMN_ID, DataBaseHelper.COLUMN_CALCULATION_ID, DataBaseHelper.COLUMN_NAME },
+				new int[] { DELTA, DELTA, TEXT },
+				DataBaseHelper.COLUMN_ID),
+		new Table(DataBaseHelper.TABLE_EXPENSES,
+				new String[] { DataBaseHelper.COLUMN_ID, DataBaseHelper.COLUMN_PERSON_ID, DataBaseHelper.COLUMN_TITLE,
+						DataBaseHelper.COLUMN_AMOUNT, DataBaseHelper.COLUMN_CURRENCY_ID, DataBaseHelper.COLUMN_DATE },
+				new int[] { DELTA, DELTA, TEXT, INTEGER, DELTA, DATE },
+				DataBaseHelper.COLUMN_ID),
+		new Table(DataBaseHelper.TABLE_SPLIT_WEIGHTS,
+				new String[] { DataBaseHelper.COLUMN_EXPENSE_ID, DataBaseHelper.COLUMN_PERSON_ID, DataBaseHelper.COLUMN_WEIGHT },
+				new int[] { DELTA, DELTA, WEIGHT },
+				DataBaseHelper.COLUMN_EXPENSE_ID + ", " + DataBaseHelper.COLUMN_PERSON_ID),
+		new Table(DataBaseHelper.TABLE_EXCHANGE_RATES,
+				new String[] { DataBaseHelper.COLUMN_CURRENCY_ID, DataBaseHelper.COLUMN_DATE,
+						DataBaseHelper.COLUMN_RATE_THIS, DataBaseHelper.COLUMN_RATE_MAIN },
+				new int[] { DELTA, DATE, REAL, REAL },
+				DataBaseHelper.COLUMN_CURRENCY_ID + ", " + DataBaseHelper.COLUMN_DATE,
+				9),
+	};
+
+	public BackupDataSource(DataBaseHelper dbHelper) {
+		this.dbHelper = dbHelper;
+		summaryDataSource = new SummaryDataSource(dbHelper);
+	}
+
+	// Writes all data to the stream, which is not closed.
+	public void backup(OutputStream stream) throws IOException {
+		BackupOutput out = new BackupOutput(stream);
+		out.writeVarLong(DataBaseHelper.DATABASE_VERSION);
+		for (Table table : TABLES)
+			writeTable(out, table);
+		out.finish();
+	}
+
+	private void writeTable(BackupOutput out, Table table) throws IOException {
+		Cursor cursor = dbHelper.getReadableDatabase().query(
+				table.name, table.columns, null, null, null, null, table.orderBy);
+		try {
+			out.writeVarLong(cursor.getCount());
+			long[] previous = new long[table.columns.length];
+			while (cursor.moveToNext()) {
+				for (int i = 0; i < table.columns.length; i++) {
+					switch (table.encodings[i]) {
+						case INTEGER:
+							out.writeSignedVarLong(cursor.getLong(i));
+							break;
+						case DELTA:
+						case DATE:
+							long value = cursor.getLong(i);
+							out.writeSignedVarLong(value - previous[i]);
+							previous[i] = value;
+							break;
+						case TEXT:
+							out.writeString(cursor.getString(i));
+							break;
+						case REAL:
+							out.writeDouble(cursor.getDouble(i));
+							break;
+						case WEIGHT:
+							out.writeWeight(cursor.getDouble(i));
+							break;
+					}
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	// Replaces all data with the contents of a backup in a single
+	// transaction; if the backup turns out to be damaged, nothing changes.
+	// The stream is not closed.
+	public void restore(InputStream stream) throws IOException {
+		BackupInput in = new BackupInput(stream);
+		try {
+			long version = in.readVarLong();
+			if (version > DataBaseHelper.DATABASE_VERSION)
+				throw new IOException("Backup is from a newer database version " + version);
+
+			WriteBatch batch = new WriteBatch(dbHelper.getWritableDatabase());
+			try {
+				batch.getDatabase().execSQL("DELETE FROM " + DataBaseHelper.TABLE_SUBTOTALS);
+				batch.getDatabase().execSQL("DELETE FROM " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES);
+				for (int i = TABLES.length - 1; i >= 0; i--)
+					batch.getDatabase().execSQL("DELETE FROM " + TABLES[i].name);
+
+				for (Table table : TABLES)
+					if (table.since <= version)
+						readTable(in, batch, table, version);
+
+				summaryDataSource.rebuildAll(batch);
+				batch.setSuccessful();
+			} finally {
+				batch.end();
+			}
+		} finally {
+			in.end();
+		}
+	}
+
+	private void readTable(BackupInput in, WriteBatch batch, Table table, long version) throws IOException {
+		StringBuilder sql = new StringBuilder("INSERT INTO " + table.name + " (");
+		for (int i = 0; i < table.columns.length; i++)
+			sql.append(i > 0 ? ", " : "").append(table.columns[i]);
+		sql.append(") VALUES (");
+		for (int i = 0; i < table.columns.length; i++)
+			sql.append(i > 0 ? ", ?" : "?");
+		sql.append(')');
+		SQLiteStatement statement = batch.getStatement(sql.toString());
+
+		long rows = in.readVarLong();
+		long[] previous = new long[table.columns.length];
+		for (long row = 0; row < rows; row++) {
+			for (int i = 0; i < table.columns.length; i++) {
+				switch (table.encodings[i]) {
+					case INTEGER:
+						statement.bindLong(i + 1, in.readSignedVarLong());
+						break;
+					case DELTA:
+						previous[i] += in.readSignedVarLong();
+						statement.bindLong(i + 1, previous[i]);
+						break;
+					case DATE:
+						previous[i] += in.readSignedVarLong();
+						// dates were stored in milliseconds before version 7
+						statement.bindLong(i + 1, version < 7 ? DataBaseHelper.millisToEpochDay(previous[i]) : previous[i]);
+						break;
+					case TEXT:
+						statement.bindString(i + 1, in.readString());
+						break;
+					case REAL:
+						statement.bindDouble(i + 1, in.readDouble());
+						break;
+					case WEIGHT:
+						statement.bindDouble(i + 1, in.readWeight());
+						break;
+				}
+			}
+			statement.executeInsert();
+		}
+	}
+
+}
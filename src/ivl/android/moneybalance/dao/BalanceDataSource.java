@@ -0,0 +1,389 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.dao;
+
+import ivl.android.moneybalance.data.Balance;
+import ivl.android.moneybalance.data.BalanceEngine;
+import ivl.android.moneybalance.data.BalanceSheet;
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.Currency;
+import ivl.android.moneybalance.data.CurrencySubtotals;
+import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.ExpenseTable;
+import ivl.android.moneybalance.data.Money;
+import ivl.android.moneybalance.data.Person;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+// Maintains the subtotals table, a ledger of paid and consumed amounts per
+// person, currency and rate period, in minor units of that currency. Expense
+// writes apply their contribution as deltas; exchange rate changes leave the
+// ledger alone, as amounts are only exchanged when the balances are read.
+// Periods are identified by their first day, or Currency.BASE_PERIOD_START.
+// The ledger of a calculation is complete if it has a row for every person
+// and rate period; otherwise it is rebuilt on the next read.
+public class BalanceDataSource {
+
+	private final DataBaseHelper dbHelper;
+
+	private static final String PERSONS_SQL =
+			"SELECT " + DataBaseHelper.COLUMN_ID + ", " + DataBaseHelper.COLUMN_NAME +
+			" FROM " + DataBaseHelper.TABLE_PERSONS +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?" +
+			" ORDER BY " + DataBaseHelper.COLUMN_ID;
+
+	private static final String LIST_SQL =
+			"SELECT " + DataBaseHelper.COLUMN_PERSON_ID +
+			", " + DataBaseHelper.COLUMN_CURRENCY_ID +
+			", " + DataBaseHelper.COLUMN_RATE_DATE +
+			", " + DataBaseHelper.COLUMN_PAID +
+			", " + DataBaseHelper.COLUMN_CONSUMED +
+			" FROM " + DataBaseHelper.TABLE_SUBTOTALS +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?";
+
+	private static final String CURRENCIES_BY_CALCULATION =
+			"(SELECT " + DataBaseHelper.COLUMN_ID + " FROM " + DataBaseHelper.TABLE_CURRENCIES +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?1)";
+
+	private static final String COMPLETE_SQL =
+			"SELECT (SELECT COUNT(*) FROM " + DataBaseHelper.TABLE_PERSONS +
+					" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?1)" +
+			" * ((SELECT COUNT(*) FROM " + DataBaseHelper.TABLE_CURRENCIES +
+					" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?1)" +
+			" + (SELECT COUNT(*) FROM " + DataBaseHelper.TABLE_EXCHANGE_RATES +
+					" WHERE " + DataBaseHelper.COLUMN_CURRENCY_ID + " IN " + CURRENCIES_BY_CALCULATION + "))" +
+			" = (SELECT COUNT(*) FROM " + DataBaseHelper.TABLE_SUBTOTALS +
+					" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?1)";
+
+	// sums per currency and a day within the rate period
+	private static final String TOTALS_BY_LEDGER_SQL =
+			"SELECT " + DataBaseHelper.COLUMN_CURRENCY_ID + ", " + DataBaseHelper.COLUMN_RATE_DATE +
+			", SUM(" + DataBaseHelper.COLUMN_PAID + ")" +
+			" FROM " + DataBaseHelper.TABLE_SUBTOTALS +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?" +
+			" GROUP BY " + DataBaseHelper.COLUMN_CURRENCY_ID + ", " + DataBaseHelper.COLUMN_RATE_DATE;
+
+	private static final String TOTALS_BY_EXPENSES_SQL =
+			"SELECT " + DataBaseHelper.COLUMN_CURRENCY_ID + ", " + DataBaseHelper.COLUMN_DATE +
+			", SUM(" + DataBaseHelper.COLUMN_AMOUNT + ")" +
+			" FROM " + DataBaseHelper.TABLE_EXPENSES +
+			" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + ExpenseDataSource.PERSONS_BY_CALCULATION +
+			" GROUP BY " + DataBaseHelper.COLUMN_CURRENCY_ID + ", " + DataBaseHelper.COLUMN_DATE;
+
+	private static final String SLOT_TOTAL_SQL =
+			"SELECT IFNULL(SUM(" + DataBaseHelper.COLUMN_PAID + "), 0)" +
+			" FROM " + DataBaseHelper.TABLE_SUBTOTALS +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?" +
+			" AND " + DataBaseHelper.COLUMN_CURRENCY_ID + " = ?" +
+			" AND " + DataBaseHelper.COLUMN_RATE_DATE + " = ?";
+
+	private static final String INSERT_COLUMNS =
+			"INSERT OR REPLACE INTO " + DataBaseHelper.TABLE_SUBTOTALS + " (" +
+			DataBaseHelper.COLUMN_PERSON_ID + ", " + DataBaseHelper.COLUMN_CURRENCY_ID + ", " +
+			DataBaseHelper.COLUMN_RATE_DATE + ", " + DataBaseHelper.COLUMN_CALCULATION_ID + ", " +
+			DataBaseHelper.COLUMN_PAID + ", " + DataBaseHelper.COLUMN_CONSUMED + ")";
+
+	private static final String PUT_SQL =
+			INSERT_COLUMNS + " VALUES (?, ?, ?, ?, ?, ?)";
+
+	private static final String CREATE_PERSON_SQL =
+			INSERT_COLUMNS +
+			" SELECT ?1, " + DataBaseHelper.COLUMN_ID + ", " + Currency.BASE_PERIOD_START + ", ?2, 0, 0" +
+			" FROM " + DataBaseHelper.TABLE_CURRENCIES +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?2" +
+			" UNION ALL SELECT ?1, r." + DataBaseHelper.COLUMN_CURRENCY_ID + ", r." + DataBaseHelper.COLUMN_DATE + ", ?2, 0, 0" +
+			" FROM " + DataBaseHelper.TABLE_EXCHANGE_RATES + " r, " + DataBaseHelper.TABLE_CURRENCIES + " c" +
+			" WHERE c." + DataBaseHelper.COLUMN_ID + " = r." + DataBaseHelper.COLUMN_CURRENCY_ID +
+			" AND c." + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?2";
+
+	private static final String CREATE_CURRENCY_SQL =
+			INSERT_COLUMNS +
+			" SELECT p." + DataBaseHelper.COLUMN_ID + ", ?1, " + Currency.BASE_PERIOD_START + ", ?2, 0, 0" +
+			" FROM " + DataBaseHelper.TABLE_PERSONS + " p" +
+			" WHERE p." + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?2" +
+			" UNION ALL SELECT p." + DataBaseHelper.COLUMN_ID + ", ?1, r." + DataBaseHelper.COLUMN_DATE + ", ?2, 0, 0" +
+			" FROM " + DataBaseHelper.TABLE_PERSONS + " p, " + DataBaseHelper.TABLE_EXCHANGE_RATES + " r" +
+			" WHERE p." + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?2" +
+			" AND r." + DataBaseHelper.COLUMN_CURRENCY_ID + " = ?1";
+
+	private static final String ADD_PAID_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_SUBTOTALS + " SET " +
+			DataBaseHelper.COLUMN_PAID + " = " + DataBaseHelper.COLUMN_PAID + " + ?" +
+			" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " = ?" +
+			" AND " + DataBaseHelper.COLUMN_CURRENCY_ID + " = ?" +
+			" AND " + DataBaseHelper.COLUMN_RATE_DATE + " = ?";
+
+	private static final String ADD_CONSUMED_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_SUBTOTALS + " SET " +
+			DataBaseHelper.COLUMN_CONSUMED + " = " + DataBaseHelper.COLUMN_CONSUMED + " + ?" +
+			" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " = ?" +
+			" AND " + DataBaseHelper.COLUMN_CURRENCY_ID + " = ?" +
+			" AND " + DataBaseHelper.COLUMN_RATE_DATE + " = ?";
+
+	public BalanceDataSource(DataBaseHelper dbHelper) {
+		this.dbHelper = dbHelper;
+	}
+
+	// Returns the balances of all persons of the calculation. If the ledger
+	// is incomplete, e.g. right after a schema upgrade, the expenses are
+	// loaded once into a table and the ledger rebuilt.
+	public List<Balance> listByCalculation(long calculationId) {
+		SQLiteDatabase db = dbHelper.getWritableDatabase();
+		if (!isComplete(db, calculationId)) {
+			WriteBatch batch = new WriteBatch(db);
+			try {
+				rebuildIfIncomplete(batch, calculationId);
+				batch.setSuccessful();
+			} finally {
+				batch.end();
+			}
+		}
+
+		String[] args = { Long.toString(calculationId) };
+		List<Balance> balances = new ArrayList<>();
+		Map<Long, Integer> personIndexes = new HashMap<>();
+		Cursor cursor = db.rawQuery(PERSONS_SQL, args);
+		while (cursor.moveToNext()) {
+			Balance balance = new Balance(cursor.getString(1));
+			balance.setId(cursor.getLong(0));
+			personIndexes.put(balance.getId(), balances.size());
+			balances.add(balance);
+		}
+		cursor.close();
+
+		Map<Long, Currency> currencies = loadCurrencies(db, calculationId);
+		CurrencySubtotals subtotals = new CurrencySubtotals(balances.size());
+		cursor = db.rawQuery(LIST_SQL, args);
+		while (cursor.moveToNext()) {
+			Integer person = personIndexes.get(cursor.getLong(0));
+			Currency currency = currencies.get(cursor.getLong(1));
+			if (person == null || currency == null)
+				continue;
+			int slot = subtotals.slotOf(currency, currency.getRatePeriod(cursor.getInt(2)));
+			subtotals.addPaid(slot, person, cursor.getLong(3));
+			subtotals.addConsumed(slot, person, cursor.getLong(4));
+		}
+		cursor.close();
+
+		long[] paid = new long[balances.size()];
+		long[] consumed = new long[balances.size()];
+		subtotals.exchange(getMainDecimalFactor(db, calculationId), paid, consumed);
+		for (int i = 0; i < balances.size(); i++) {
+			balances.get(i).setPaid(paid[i]);
+			balances.get(i).setConsumed(consumed[i]);
+		}
+		return balances;
+	}
+
+	private static boolean isComplete(SQLiteDatabase db, long calculationId) {
+		Cursor cursor = db.rawQuery(COMPLETE_SQL, new String[] { Long.toString(calculationId) });
+		boolean complete = cursor.moveToFirst() && cursor.getLong(0) != 0;
+		cursor.close();
+		return complete;
+	}
+
+	// Rebuilds the ledger from the stored expenses if it is incomplete.
+	// Returns whether it did.
+	boolean rebuildIfIncomplete(WriteBatch batch, long calculationId) {
+		if (isComplete(batch.getDatabase(), calculationId))
+			return false;
+		rebuild(batch, new CalculationDataSource(dbHelper).getExpenseTable(calculationId));
+		return true;
+	}
+
+	private Map<Long, Currency> loadCurrencies(SQLiteDatabase db, long calculationId) {
+		Map<Long, Currency> currencies = new HashMap<>();
+		for (Currency currency : new CurrencyDataSource(dbHelper).getByCalculation(db, calculationId))
+			currencies.put(currency.getId(), currency);
+		return currencies;
+	}
+
+	private static long getMainDecimalFactor(SQLiteDatabase db, long calculationId) {
+		long mainDecimalFactor = 1;
+		Cursor cursor = db.query(
+				DataBaseHelper.TABLE_CALCULATIONS, new String[] { DataBaseHelper.COLUMN_CURRENCY },
+				DataBaseHelper.COLUMN_ID + " = ?", new String[] { Long.toString(calculationId) },
+				null, null, null);
+		if (cursor.moveToFirst())
+			mainDecimalFactor = Money.getDecimalFactor(cursor.getString(0));
+		cursor.close();
+		return mainDecimalFactor;
+	}
+
+	// The total of all expenses in minor units of the main currency. The sums
+	// per currency and rate period are taken from the ledger if it is
+	// complete, and from the expenses otherwise, then exchanged like in a
+	// BalanceSheet.
+	long getFixedExpenseTotal(SQLiteDatabase db, long calculationId) {
+		String sql = isComplete(db, calculationId) ? TOTALS_BY_LEDGER_SQL : TOTALS_BY_EXPENSES_SQL;
+		Map<Long, Currency> currencies = loadCurrencies(db, calculationId);
+		CurrencySubtotals totals = new CurrencySubtotals(0);
+		Cursor cursor = db.rawQuery(sql, new String[] { Long.toString(calculationId) });
+		while (cursor.moveToNext()) {
+			Currency currency = currencies.get(cursor.getLong(0));
+			if (currency != null)
+				totals.addTotal(totals.slotOf(currency, currency.getRatePeriod(cursor.getInt(1))), cursor.getLong(2));
+		}
+		cursor.close();
+		return totals.exchangeTotal(getMainDecimalFactor(db, calculationId));
+	}
+
+	// Adds the rows of a new person, one per currency of the calculation.
+	void create(WriteBatch batch, long personId, long calculationId) {
+		SQLiteStatement statement = batch.getStatement(CREATE_PERSON_SQL);
+		statement.bindLong(1, personId);
+		statement.bindLong(2, calculationId);
+		statement.execute();
+	}
+
+	// Adds the rows of a new currency, one per person of the calculation.
+	void createCurrency(WriteBatch batch, long currencyId, long calculationId) {
+		SQLiteStatement statement = batch.getStatement(CREATE_CURRENCY_SQL);
+		statement.bindLong(1, currencyId);
+		statement.bindLong(2, calculationId);
+		statement.execute();
+	}
+
+	private void put(WriteBatch batch, long personId, long currencyId, int rateDate, long calculationId, long paid, long consumed) {
+		SQLiteStatement statement = batch.getStatement(PUT_SQL);
+		statement.bindLong(1, personId);
+		statement.bindLong(2, currencyId);
+		statement.bindLong(3, rateDate);
+		statement.bindLong(4, calculationId);
+		statement.bindLong(5, paid);
+		statement.bindLong(6, consumed);
+		statement.execute();
+	}
+
+	void delete(WriteBatch batch, long personId) {
+		batch.getDatabase().delete(
+				DataBaseHelper.TABLE_SUBTOTALS,
+				DataBaseHelper.COLUMN_PERSON_ID + " = ?", new String[] { Long.toString(personId) });
+	}
+
+	void deleteCurrency(WriteBatch batch, long currencyId) {
+		batch.getDatabase().delete(
+				DataBaseHelper.TABLE_SUBTOTALS,
+				DataBaseHelper.COLUMN_CURRENCY_ID + " = ?", new String[] { Long.toString(currencyId) });
+	}
+
+	void deleteByCalculation(WriteBatch batch, long calculationId) {
+		batch.getDatabase().delete(
+				DataBaseHelper.TABLE_SUBTOTALS,
+				DataBaseHelper.COLUMN_CALCULATION_ID + " = ?", new String[] { Long.toString(calculationId) });
+	}
+
+	// Adds an expense to the complete ledger and returns by how much the
+	// exchanged expense total changes.
+	long addExpense(WriteBatch batch, Expense expense) {
+		return apply(batch, expense, 1);
+	}
+
+	long removeExpense(WriteBatch batch, Expense expense) {
+		return apply(batch, expense, -1);
+	}
+
+	// Only the sum of the expense's currency and rate period changes, so the
+	// change of the total is that of the sum's exchanged value.
+	private long apply(WriteBatch batch, Expense expense, int sign) {
+		Currency currency = expense.getCurrency();
+		if (currency == null)
+			return 0;
+		Calculation calculation = expense.getCalculation();
+		long currencyId = currency.getId();
+		int period = currency.getRatePeriod(expense.getEpochDay());
+		int rateDate = currency.getRatePeriodStart(period);
+
+		SQLiteStatement statement = batch.getStatement(SLOT_TOTAL_SQL);
+		statement.bindLong(1, calculation.getId());
+		statement.bindLong(2, currencyId);
+		statement.bindLong(3, rateDate);
+		long totalBefore = statement.simpleQueryForLong();
+		long totalAfter = totalBefore + sign * expense.getFixedAmount();
+
+		statement = batch.getStatement(ADD_PAID_SQL);
+		statement.bindLong(1, sign * expense.getFixedAmount());
+		statement.bindLong(2, expense.getPerson().getId());
+		statement.bindLong(3, currencyId);
+		statement.bindLong(4, rateDate);
+		statement.execute();
+
+		List<Person> persons = calculation.getPersons();
+		long[] shares = new long[persons.size()];
+		expense.getFixedShares(shares);
+		for (int i = 0; i < persons.size(); i++) {
+			if (shares[i] == 0)
+				continue;
+			statement = batch.getStatement(ADD_CONSUMED_SQL);
+			statement.bindLong(1, sign * shares[i]);
+			statement.bindLong(2, persons.get(i).getId());
+			statement.bindLong(3, currencyId);
+			statement.bindLong(4, rateDate);
+			statement.execute();
+		}
+
+		long mainDecimalFactor = calculation.getMainCurrency().getDecimalFactor();
+		return currency.exchange(totalAfter, mainDecimalFactor, period) - currency.exchange(totalBefore, mainDecimalFactor, period);
+	}
+
+	// Recomputes the ledger of a calculation from its expenses. Existing
+	// entries that deviate from the recomputed values are logged.
+	void rebuild(WriteBatch batch, ExpenseTable expenses) {
+		Calculation calculation = expenses.getCalculation();
+		CurrencySubtotals subtotals = BalanceEngine.compute(expenses).getSubtotals();
+		List<Person> persons = calculation.getPersons();
+		long calculationId = calculation.getId();
+
+		Cursor cursor = batch.getDatabase().rawQuery(LIST_SQL, new String[] { Long.toString(calculationId) });
+		while (cursor.moveToNext()) {
+			int i = calculation.getPersonIndex(cursor.getLong(0));
+			int c = calculation.getCurrencyIndex(cursor.getLong(1));
+			if (i < 0 || c < 0)
+				continue;
+			Currency currency = calculation.getCurrencies().get(c);
+			int slot = subtotals.find(currency, currency.getRatePeriod(cursor.getInt(2)));
+			long paid = slot < 0 ? 0 : subtotals.getPaid(slot, i);
+			long consumed = slot < 0 ? 0 : subtotals.getConsumed(slot, i);
+			if (cursor.getLong(3) != paid || cursor.getLong(4) != consumed)
+				Log.w(BalanceDataSource.class.getName(), String.format("Subtotal of person %d in currency %d was out of date",
+						cursor.getLong(0), cursor.getLong(1)));
+		}
+		cursor.close();
+
+		deleteByCalculation(batch, calculationId);
+		for (Currency currency : calculation.getCurrencies()) {
+			for (int period = -1; period < currency.getRatePeriodCount() - 1; period++) {
+				int slot = subtotals.find(currency, period);
+				int rateDate = currency.getRatePeriodStart(period);
+				for (int i = 0; i < persons.size(); i++) {
+					long paid = slot < 0 ? 0 : subtotals.getPaid(slot, i);
+					long consumed = slot < 0 ? 0 : subtotals.getConsumed(slot, i);
+					put(batch, persons.get(i).getId(), currency.getId(), rateDate, calculationId, paid, consumed);
+				}
+			}
+		}
+	}
+
+}
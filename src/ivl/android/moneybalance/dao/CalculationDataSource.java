@@ -19,17 +19,23 @@ package ivl.android.moneybalance.dao;
 import ivl.android.moneybalance.data.Currency;
 import ivl.android.moneybalance.data.Calculation;
 import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.ExpenseTable;
 import ivl.android.moneybalance.data.Person;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 
 public class CalculationDataSource extends AbstractDataSource<Calculation> {
 
 	private final DataBaseHelper dbHelper;
+	private final SummaryDataSource summaryDataSource;
+	private final BalanceDataSource balanceDataSource;
 
 	private static final String[] COLUMNS = {
 		DataBaseHelper.COLUMN_ID,
@@ -40,6 +46,8 @@ public class CalculationDataSource extends AbstractDataSource<Calculation> {
 	public CalculationDataSource(DataBaseHelper dbHelper) {
 		super(dbHelper, DataBaseHelper.TABLE_CALCULATIONS, COLUMNS);
 		this.dbHelper = dbHelper;
+		summaryDataSource = new SummaryDataSource(dbHelper);
+		balanceDataSource = new BalanceDataSource(dbHelper);
 	}
 
 	@Override
@@ -52,6 +60,13 @@ public class CalculationDataSource extends AbstractDataSource<Calculation> {
 
 	@Override
 	public Calculation fromCursor(Cursor cursor) {
+		Calculation calculation = fromCursorWithoutExpenses(cursor);
+		ExpenseDataSource expenseDataSource = new ExpenseDataSource(dbHelper, calculation);
+		calculation.setExpenses(expenseDataSource.listByCalculation());
+		return calculation;
+	}
+
+	private Calculation fromCursorWithoutExpenses(Cursor cursor) {
 		long calculationId = cursor.getLong(0);
 		String title = cursor.getString(1);
 		String mainCurrencyCode = cursor.getString(2);
@@ -60,50 +75,70 @@ public class CalculationDataSource extends AbstractDataSource<Calculation> {
 		calculation.setId(calculationId);
 
 		CurrencyDataSource currencyDataSource = new CurrencyDataSource(dbHelper);
-		Cursor currenciesCursor = currencyDataSource.listByCalculation(calculationId);
-		List<Currency> currencies = currencyDataSource.getAllFromCursor(currenciesCursor);
-		calculation.setCurrencies(currencies);
+		calculation.setCurrencies(currencyDataSource.getByCalculation(calculationId));
 
 		PersonDataSource personDataSource = new PersonDataSource(dbHelper, calculation);
 		Cursor personsCursor = personDataSource.listByCalculation();
 		List<Person> persons = personDataSource.getAllFromCursor(personsCursor);
 		calculation.setPersons(persons);
 
-		ExpenseDataSource expenseDataSource = new ExpenseDataSource(dbHelper, calculation);
-		List<Expense> expenses = new ArrayList<>();
-		calculation.setExpenses(expenses);
-
-		for (Person person : persons) {
-			Cursor expensesCursor = expenseDataSource.listByPerson(person.getId());
-			List<Expense> personExpenses = expenseDataSource.getAllFromCursor(expensesCursor); 
-			expenses.addAll(personExpenses);
-		}
-
 		return calculation;
 	}
 
+	// Loads the expenses of a calculation into a table, without creating an
+	// object per expense. The table's calculation has persons and currencies,
+	// but no expenses.
+	public ExpenseTable getExpenseTable(long calculationId) {
+		Cursor cursor = getDatabase().query(
+				DataBaseHelper.TABLE_CALCULATIONS, COLUMNS,
+				DataBaseHelper.COLUMN_ID + " = ?", new String[] { Long.toString(calculationId) },
+				null, null, null);
+		cursor.moveToFirst();
+		Calculation calculation = fromCursorWithoutExpenses(cursor);
+		cursor.close();
+
+		return new ExpenseDataSource(dbHelper, calculation).tableByCalculation();
+	}
+
 	@Override
 	public void delete(long id) {
-		Calculation calculation = get(id);
-
-		ExpenseDataSource expenseDataSource = new ExpenseDataSource(dbHelper, calculation);
-		for (Expense expense : calculation.getExpenses())
-			expenseDataSource.delete(expense.getId());
-
-		PersonDataSource personDataSource = new PersonDataSource(dbHelper, calculation);
-		for (Person person : calculation.getPersons())
-			personDataSource.delete(person.getId());
+		super.delete(id);
+	}
 
-		CurrencyDataSource currencyDataSource = new CurrencyDataSource(dbHelper);
-		for (Currency currency : calculation.getCurrencies())
-			currencyDataSource.delete(currency.getId());
+	@Override
+	void delete(WriteBatch batch, long id) {
+		// delete dependent rows with one statement per table, innermost first
+		String[] sql = {
+			"DELETE FROM " + DataBaseHelper.TABLE_SPLIT_WEIGHTS +
+					" WHERE " + DataBaseHelper.COLUMN_EXPENSE_ID + " IN " + ExpenseDataSource.EXPENSES_BY_CALCULATION,
+			"DELETE FROM " + DataBaseHelper.TABLE_EXPENSES +
+					" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + ExpenseDataSource.PERSONS_BY_CALCULATION,
+			"DELETE FROM " + DataBaseHelper.TABLE_PERSONS +
+					" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?",
+			"DELETE FROM " + DataBaseHelper.TABLE_EXCHANGE_RATES +
+					" WHERE " + DataBaseHelper.COLUMN_CURRENCY_ID + " IN " + CurrencyDataSource.CURRENCIES_BY_CALCULATION,
+			"DELETE FROM " + DataBaseHelper.TABLE_CURRENCIES +
+					" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?"
+		};
+		for (String s : sql) {
+			SQLiteStatement statement = batch.getStatement(s);
+			statement.bindLong(1, id);
+			statement.execute();
+		}
+		summaryDataSource.delete(batch, id);
+		balanceDataSource.deleteByCalculation(batch, id);
 
-		super.delete(id);
+		super.delete(batch, id);
 	}
 
 	@Override
 	public void update(Calculation calculation) {
 		super.update(calculation);
+	}
+
+	@Override
+	void update(WriteBatch batch, Calculation calculation) {
+		super.update(batch, calculation);
 
 		CurrencyDataSource currencyDataSource = new CurrencyDataSource(dbHelper);
 		Cursor currenciesCursor = currencyDataSource.listByCalculation(calculation.getId());
@@ -115,9 +150,9 @@ public class CalculationDataSource extends AbstractDataSource<Calculation> {
 				if (oldCurrency.getCurrencyCode().equals(c.getCurrencyCode()))
 					newCurrency = c;
 			if (newCurrency != null)
-				currencyDataSource.update(newCurrency);
+				currencyDataSource.update(batch, newCurrency);
 			else
-				currencyDataSource.delete(oldCurrency.getId());
+				currencyDataSource.delete(batch, oldCurrency.getId());
 		}
 
 		for (Currency newCurrency : calculation.getCurrencies()) {
@@ -126,27 +161,88 @@ public class CalculationDataSource extends AbstractDataSource<Calculation> {
 				if (oldCurrency.getCurrencyCode().equals(newCurrency.getCurrencyCode()))
 					found = true;
 			if (!found)
-				currencyDataSource.insert(newCurrency);
+				currencyDataSource.insert(batch, newCurrency);
 		}
+
+		// the ledger is kept in the expenses' own currencies, so only the
+		// exchanged total has to be refreshed
+		summaryDataSource.refreshTotal(batch, calculation.getId());
 	}
 
 	public Calculation createCalculation(String title, String mainCurrencyCode, List<String> personNames) {
 		Calculation calculation = new Calculation(title, mainCurrencyCode);
-		insert(calculation);
 
-		CurrencyDataSource currencyDataSource = new CurrencyDataSource(dbHelper);
-		Currency mainCurrency = new Currency(calculation.getId());
-		mainCurrency.setCurrencyCode(mainCurrencyCode);
-		currencyDataSource.insert(mainCurrency);
-
-		PersonDataSource personDataSource = new PersonDataSource(dbHelper, calculation);
-		for (String personName : personNames) {
-			Person person = new Person(calculation);
-			person.setName(personName);
-			personDataSource.insert(person);
+		WriteBatch batch = beginBatch();
+		try {
+			insert(batch, calculation);
+			summaryDataSource.create(batch, calculation.getId());
+
+			CurrencyDataSource currencyDataSource = new CurrencyDataSource(dbHelper);
+			Currency mainCurrency = new Currency(calculation.getId());
+			mainCurrency.setCurrencyCode(mainCurrencyCode);
+			currencyDataSource.insert(batch, mainCurrency);
+
+			PersonDataSource personDataSource = new PersonDataSource(dbHelper, calculation);
+			for (String personName : personNames) {
+				Person person = new Person(calculation);
+				person.setName(personName);
+				personDataSource.insert(batch, person);
+			}
+
+			batch.setSuccessful();
+		} finally {
+			batch.end();
 		}
 
 		return get(calculation.getId());
 	}
 
+	// Writes a complete in-memory calculation, e.g. a generated one, in a
+	// single transaction. All objects get new ids; the summary is built once
+	// at the end instead of per expense.
+	public Calculation insertCalculation(Calculation calculation) {
+		WriteBatch batch = beginBatch();
+		try {
+			insert(batch, calculation);
+			summaryDataSource.create(batch, calculation.getId());
+
+			// currencies know their calculation id, so they are replaced
+			CurrencyDataSource currencyDataSource = new CurrencyDataSource(dbHelper);
+			Map<Currency, Currency> storedCurrencies = new HashMap<>();
+			List<Currency> currencies = new ArrayList<>();
+			for (Currency currency : calculation.getCurrencies()) {
+				Currency stored = new Currency(calculation.getId());
+				stored.setCurrencyCode(currency.getCurrencyCode());
+				stored.setExchangeRate(currency.getExchangeRateThis(), currency.getExchangeRateMain());
+				for (int period = 0; period < currency.getRatePeriodCount() - 1; period++)
+					stored.setExchangeRate(currency.getRatePeriodStart(period),
+							currency.getExchangeRateThis(period), currency.getExchangeRateMain(period));
+				currencyDataSource.insert(batch, stored);
+				storedCurrencies.put(currency, stored);
+				currencies.add(stored);
+			}
+			calculation.setCurrencies(currencies);
+			for (Expense expense : calculation.getExpenses())
+				expense.setCurrency(storedCurrencies.get(expense.getCurrency()));
+
+			PersonDataSource personDataSource = new PersonDataSource(dbHelper, calculation);
+			for (Person person : calculation.getPersons())
+				personDataSource.insert(batch, person);
+
+			ExpenseDataSource expenseDataSource = new ExpenseDataSource(dbHelper, calculation);
+			for (Expense expense : calculation.getExpenses())
+				expenseDataSource.insertWithoutSummary(batch, expense);
+
+			// drop the ledger first, so the summary takes its total from the expenses
+			balanceDataSource.deleteByCalculation(batch, calculation.getId());
+			summaryDataSource.rebuild(batch, calculation.getId());
+
+			batch.setSuccessful();
+		} finally {
+			batch.end();
+		}
+
+		return calculation;
+	}
+
 }
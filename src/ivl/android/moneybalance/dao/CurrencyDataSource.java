@@ -1,12 +1,20 @@
 package ivl.android.moneybalance.dao;
 
 import ivl.android.moneybalance.data.Currency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 public class CurrencyDataSource extends AbstractDataSource<Currency> {
 
-	private static final String[] COLUMNS = {
+	static final String[] COLUMNS = {
 		DataBaseHelper.COLUMN_ID,
 		DataBaseHelper.COLUMN_CALCULATION_ID,
 		DataBaseHelper.COLUMN_CURRENCY_CODE,
@@ -14,8 +22,36 @@ public class CurrencyDataSource extends AbstractDataSource<Currency> {
 		DataBaseHelper.COLUMN_RATE_MAIN
 	};
 
+	private static final String RATES_BY_CALCULATION_SQL =
+			"SELECT r." + DataBaseHelper.COLUMN_CURRENCY_ID +
+			", r." + DataBaseHelper.COLUMN_DATE +
+			", r." + DataBaseHelper.COLUMN_RATE_THIS +
+			", r." + DataBaseHelper.COLUMN_RATE_MAIN +
+			" FROM " + DataBaseHelper.TABLE_EXCHANGE_RATES + " r" +
+			" JOIN " + DataBaseHelper.TABLE_CURRENCIES + " c" +
+			" ON c." + DataBaseHelper.COLUMN_ID + " = r." + DataBaseHelper.COLUMN_CURRENCY_ID +
+			" WHERE c." + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?" +
+			" ORDER BY r." + DataBaseHelper.COLUMN_CURRENCY_ID + ", r." + DataBaseHelper.COLUMN_DATE;
+
+	private static final String INSERT_RATE_SQL =
+			"INSERT OR REPLACE INTO " + DataBaseHelper.TABLE_EXCHANGE_RATES + " (" +
+			DataBaseHelper.COLUMN_CURRENCY_ID + ", " + DataBaseHelper.COLUMN_DATE + ", " +
+			DataBaseHelper.COLUMN_RATE_THIS + ", " + DataBaseHelper.COLUMN_RATE_MAIN +
+			") VALUES (?, ?, ?, ?)";
+
+	private static final String DELETE_RATES_SQL =
+			"DELETE FROM " + DataBaseHelper.TABLE_EXCHANGE_RATES +
+			" WHERE " + DataBaseHelper.COLUMN_CURRENCY_ID + " = ?";
+
+	static final String CURRENCIES_BY_CALCULATION =
+			"(SELECT " + DataBaseHelper.COLUMN_ID + " FROM " + DataBaseHelper.TABLE_CURRENCIES +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?)";
+
+	private final BalanceDataSource balanceDataSource;
+
 	public CurrencyDataSource(DataBaseHelper dbHelper) {
 		super(dbHelper, DataBaseHelper.TABLE_CURRENCIES, COLUMNS);
+		balanceDataSource = new BalanceDataSource(dbHelper);
 	}
 
 	@Override
@@ -38,8 +74,96 @@ public class CurrencyDataSource extends AbstractDataSource<Currency> {
 		return currency;
 	}
 
+	@Override
+	long insert(WriteBatch batch, Currency currency) {
+		long insertId = super.insert(batch, currency);
+		insertRates(batch, currency);
+		balanceDataSource.createCurrency(batch, insertId, currency.getCalculationId());
+		return insertId;
+	}
+
+	// If dated rates were added or removed, expenses move between rate
+	// periods and the balance ledger of the calculation is dropped; a change
+	// of rates alone keeps it.
+	@Override
+	void update(WriteBatch batch, Currency currency) {
+		super.update(batch, currency);
+		List<Integer> storedDays = getRateDays(batch, currency.getId());
+		boolean periodsChanged = storedDays.size() != currency.getRatePeriodCount() - 1;
+		for (int i = 0; i < storedDays.size() && !periodsChanged; i++)
+			periodsChanged = storedDays.get(i) != currency.getRatePeriodStart(i);
+
+		deleteRates(batch, currency.getId());
+		insertRates(batch, currency);
+		if (periodsChanged)
+			balanceDataSource.deleteByCalculation(batch, currency.getCalculationId());
+	}
+
+	@Override
+	void delete(WriteBatch batch, long id) {
+		super.delete(batch, id);
+		deleteRates(batch, id);
+		balanceDataSource.deleteCurrency(batch, id);
+	}
+
+	private void insertRates(WriteBatch batch, Currency currency) {
+		for (int period = 0; period < currency.getRatePeriodCount() - 1; period++) {
+			SQLiteStatement statement = batch.getStatement(INSERT_RATE_SQL);
+			statement.bindLong(1, currency.getId());
+			statement.bindLong(2, currency.getRatePeriodStart(period));
+			statement.bindDouble(3, currency.getExchangeRateThis(period));
+			statement.bindDouble(4, currency.getExchangeRateMain(period));
+			statement.execute();
+		}
+	}
+
+	private void deleteRates(WriteBatch batch, long currencyId) {
+		SQLiteStatement statement = batch.getStatement(DELETE_RATES_SQL);
+		statement.bindLong(1, currencyId);
+		statement.execute();
+	}
+
+	private List<Integer> getRateDays(WriteBatch batch, long currencyId) {
+		List<Integer> days = new ArrayList<>();
+		Cursor cursor = batch.getDatabase().query(
+				DataBaseHelper.TABLE_EXCHANGE_RATES, new String[] { DataBaseHelper.COLUMN_DATE },
+				DataBaseHelper.COLUMN_CURRENCY_ID + " = ?", new String[] { Long.toString(currencyId) },
+				null, null, DataBaseHelper.COLUMN_DATE);
+		while (cursor.moveToNext())
+			days.add(cursor.getInt(0));
+		cursor.close();
+		return days;
+	}
+
+	// Returns the currencies of a calculation with their dated rates.
+	public List<Currency> getByCalculation(long calculationId) {
+		return getByCalculation(getDatabase(), calculationId);
+	}
+
+	// Same as above, reading through the given database, e.g. while it is
+	// being upgraded
+	List<Currency> getByCalculation(SQLiteDatabase db, long calculationId) {
+		List<Currency> currencies = getAllFromCursor(listByCalculation(db, calculationId));
+		Map<Long, Currency> byId = new HashMap<>();
+		for (Currency currency : currencies)
+			byId.put(currency.getId(), currency);
+
+		Cursor cursor = db.rawQuery(RATES_BY_CALCULATION_SQL, new String[] { Long.toString(calculationId) });
+		while (cursor.moveToNext()) {
+			Currency currency = byId.get(cursor.getLong(0));
+			if (currency != null)
+				currency.setExchangeRate(cursor.getInt(1), cursor.getDouble(2), cursor.getDouble(3));
+		}
+		cursor.close();
+		return currencies;
+	}
+
 	public Cursor listByCalculation(long calculationId) {
-		return getDatabase().query(
+		return listByCalculation(getDatabase(), calculationId);
+	}
+
+	private Cursor listByCalculation(SQLiteDatabase db, long calculationId) {
+		return db.query(
 				DataBaseHelper.TABLE_CURRENCIES, COLUMNS,
 				DataBaseHelper.COLUMN_CALCULATION_ID + " = ?", new String[] { Long.toString(calculationId) },
 				null, null, null);
@@ -16,23 +16,32 @@
  */
 package ivl.android.moneybalance.dao;
 
+import ivl.android.moneybalance.data.EpochDay;
+
+import java.util.TimeZone;
+
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 public class DataBaseHelper extends SQLiteOpenHelper {
 
 	private static final String DATABASE_NAME = "moneybalance.db";
-	private static final int DATABASE_VERSION = 2;
+	static final int DATABASE_VERSION = 9;
 
 	public static final String TABLE_CALCULATIONS = "calculations";
 	public static final String TABLE_CURRENCIES = "currencies";
 	public static final String TABLE_PERSONS = "persons";
 	public static final String TABLE_EXPENSES = "expenses";
 	public static final String TABLE_SPLIT_WEIGHTS = "split_weights";
+	public static final String TABLE_CALCULATION_SUMMARIES = "calculation_summaries";
+	public static final String TABLE_BALANCES = "balances";
+	public static final String TABLE_SUBTOTALS = "subtotals";
+	public static final String TABLE_EXCHANGE_RATES = "exchange_rates";
 
 	public static final String COLUMN_ID = "_id";
 	public static final String COLUMN_CALCULATION_ID = "calculation_id";
@@ -48,13 +57,36 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 	public static final String COLUMN_AMOUNT = "amount";
 	public static final String COLUMN_DATE = "date";
 	public static final String COLUMN_WEIGHT = "weight";
+	public static final String COLUMN_EXPENSE_COUNT = "expense_count";
+	public static final String COLUMN_EXPENSE_TOTAL = "expense_total";
+	public static final String COLUMN_FIRST_DATE = "first_date";
+	public static final String COLUMN_LAST_DATE = "last_date";
+	public static final String COLUMN_PERSON_NAMES = "person_names";
+	public static final String COLUMN_PAID = "paid";
+	public static final String COLUMN_CONSUMED = "consumed";
+	public static final String COLUMN_RATE_DATE = "rate_date";
+
+	private static DataBaseHelper instance;
+
+	// All activities and background tasks share one helper, so that every
+	// write goes through the same connection instead of two connections
+	// locking each other out. It is never closed.
+	public static synchronized DataBaseHelper getInstance(Context context) {
+		if (instance == null)
+			instance = new DataBaseHelper(context.getApplicationContext());
+		return instance;
+	}
 
-	public DataBaseHelper(Context context) {
+	DataBaseHelper(Context context) {
 		super(context, DATABASE_NAME, null, DATABASE_VERSION);
 	}
 
 	private void dropAll(SQLiteDatabase db) {
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_SUBTOTALS);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_BALANCES);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_CALCULATION_SUMMARIES);
 		db.execSQL("DROP TABLE IF EXISTS " + TABLE_SPLIT_WEIGHTS);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_EXCHANGE_RATES);
 		db.execSQL("DROP TABLE IF EXISTS " + TABLE_EXPENSES);
 		db.execSQL("DROP TABLE IF EXISTS " + TABLE_PERSONS);
 		db.execSQL("DROP TABLE IF EXISTS " + TABLE_CURRENCIES);
@@ -134,6 +166,107 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 		cursor.close();
 	}
 
+	private void upgradeV3(SQLiteDatabase db) {
+		// indexes for the lookups done when loading a calculation
+		db.execSQL("CREATE INDEX " + TABLE_PERSONS + "_by_calculation ON " + TABLE_PERSONS +
+				"(" + COLUMN_CALCULATION_ID + ")");
+		db.execSQL("CREATE INDEX " + TABLE_CURRENCIES + "_by_calculation ON " + TABLE_CURRENCIES +
+				"(" + COLUMN_CALCULATION_ID + ")");
+		db.execSQL("CREATE INDEX " + TABLE_EXPENSES + "_by_person ON " + TABLE_EXPENSES +
+				"(" + COLUMN_PERSON_ID + ", " + COLUMN_DATE + ")");
+		db.execSQL("CREATE INDEX " + TABLE_SPLIT_WEIGHTS + "_by_expense ON " + TABLE_SPLIT_WEIGHTS +
+				"(" + COLUMN_EXPENSE_ID + ", " + COLUMN_PERSON_ID + ", " + COLUMN_WEIGHT + ")");
+	}
+
+	private void upgradeV7(SQLiteDatabase db) {
+		// expense dates are now stored as epoch days instead of milliseconds;
+		// there are far fewer distinct dates than expenses
+		Cursor cursor = db.rawQuery("SELECT DISTINCT " + COLUMN_DATE + " FROM " + TABLE_EXPENSES, null);
+		SQLiteStatement statement = db.compileStatement(
+				"UPDATE " + TABLE_EXPENSES + " SET " + COLUMN_DATE + " = ? WHERE " + COLUMN_DATE + " = ?");
+		try {
+			while (cursor.moveToNext()) {
+				long millis = cursor.getLong(0);
+				statement.bindLong(1, millisToEpochDay(millis));
+				statement.bindLong(2, millis);
+				statement.execute();
+			}
+		} finally {
+			statement.close();
+			cursor.close();
+		}
+	}
+
+	private void upgradeV9(SQLiteDatabase db) {
+		String sql;
+
+		// create new table "exchange_rates" for rates valid from a date on;
+		// the rates in "currencies" apply before the first of them
+		sql = "CREATE TABLE " + TABLE_EXCHANGE_RATES + "(" +
+				COLUMN_CURRENCY_ID + " integer not null, " +
+				COLUMN_DATE + " integer not null, " +
+				COLUMN_RATE_THIS + " real not null, " +
+				COLUMN_RATE_MAIN + " real not null, " +
+				"primary key (" + COLUMN_CURRENCY_ID + ", " + COLUMN_DATE + "))";
+		db.execSQL(sql);
+
+		// Derived data, filled from the other tables. Versions 4 to 8 were
+		// development steps towards these tables; whatever they left behind
+		// is dropped, so each table is created once, in its final shape.
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_CALCULATION_SUMMARIES);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_BALANCES);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_SUBTOTALS);
+
+		// create new table "calculation_summaries", keyed by calculation id;
+		// amounts are in minor units of the main currency, dates are epoch
+		// days
+		sql = "CREATE TABLE " + TABLE_CALCULATION_SUMMARIES + "(" +
+				COLUMN_ID + " integer primary key, " +
+				COLUMN_EXPENSE_COUNT + " integer not null, " +
+				COLUMN_EXPENSE_TOTAL + " integer not null, " +
+				COLUMN_FIRST_DATE + " integer, " +
+				COLUMN_LAST_DATE + " integer, " +
+				COLUMN_PERSON_NAMES + " text not null)";
+		db.execSQL(sql);
+
+		// create new table "subtotals", a ledger per person, currency and
+		// rate period in minor units of that currency, so that exchange rate
+		// changes don't invalidate it; a period is identified by its first
+		// day. It starts out empty and is filled by BalanceDataSource when a
+		// calculation is first read.
+		sql = "CREATE TABLE " + TABLE_SUBTOTALS + "(" +
+				COLUMN_PERSON_ID + " integer not null, " +
+				COLUMN_CURRENCY_ID + " integer not null, " +
+				COLUMN_RATE_DATE + " integer not null, " +
+				COLUMN_CALCULATION_ID + " integer not null, " +
+				COLUMN_PAID + " integer not null, " +
+				COLUMN_CONSUMED + " integer not null, " +
+				"primary key (" + COLUMN_PERSON_ID + ", " + COLUMN_CURRENCY_ID + ", " + COLUMN_RATE_DATE + "))";
+		db.execSQL(sql);
+
+		db.execSQL("CREATE INDEX " + TABLE_SUBTOTALS + "_by_calculation ON " + TABLE_SUBTOTALS +
+				"(" + COLUMN_CALCULATION_ID + ")");
+	}
+
+	// Converts a date stored before version 7, i.e. local midnight in
+	// milliseconds. Rounds to the nearest day, so that a date stays the same
+	// if the time zone has changed since it was stored.
+	static int millisToEpochDay(long millis) {
+		return EpochDay.fromMillis(millis + 12 * 3600 * 1000, TimeZone.getDefault());
+	}
+
+	// Fills the summaries table from the current schema. Runs once after all
+	// upgrade steps, so it never sees an intermediate version of the tables.
+	private void rebuildSummaries(SQLiteDatabase db) {
+		WriteBatch batch = new WriteBatch(db);
+		try {
+			new SummaryDataSource(this).rebuildAll(batch);
+			batch.setSuccessful();
+		} finally {
+			batch.end();
+		}
+	}
+
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		onUpgrade(db, 0, DATABASE_VERSION);
@@ -152,6 +285,12 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 
 		if (oldVersion < 1) createV1(db);
 		if (oldVersion < 2) upgradeV2(db);
+		if (oldVersion < 3) upgradeV3(db);
+		if (oldVersion < 7) upgradeV7(db);
+		if (oldVersion < 9) upgradeV9(db);
+
+		// the summaries table was created empty above
+		if (oldVersion < 9) rebuildSummaries(db);
 	}
 
 }
@@ -17,19 +17,24 @@
 package ivl.android.moneybalance.dao;
 
 import ivl.android.moneybalance.data.Calculation;
-import ivl.android.moneybalance.data.Currency;
 import ivl.android.moneybalance.data.Expense;
+import ivl.android.moneybalance.data.ExpenseTable;
+import ivl.android.moneybalance.data.Person;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 
 public class ExpenseDataSource extends AbstractDataSource<Expense> {
 
 	private final Calculation calculation;
+	private final SummaryDataSource summaryDataSource;
+	private final BalanceDataSource balanceDataSource;
 
 	private static final String[] COLUMNS = {
 		DataBaseHelper.COLUMN_ID,
@@ -40,101 +45,240 @@ public class ExpenseDataSource extends AbstractDataSource<Expense> {
 		DataBaseHelper.COLUMN_DATE
 	};
 
+	static final String PERSONS_BY_CALCULATION =
+			"(SELECT " + DataBaseHelper.COLUMN_ID + " FROM " + DataBaseHelper.TABLE_PERSONS +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?)";
+	static final String EXPENSES_BY_CALCULATION =
+			"(SELECT " + DataBaseHelper.COLUMN_ID + " FROM " + DataBaseHelper.TABLE_EXPENSES +
+			" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION + ")";
+
+	private static final String LIST_ORDER =
+			DataBaseHelper.COLUMN_PERSON_ID + ", " + DataBaseHelper.COLUMN_DATE + ", " + DataBaseHelper.COLUMN_ID;
+	private static final String TABLE_WEIGHTS_SQL =
+			"SELECT w." + DataBaseHelper.COLUMN_EXPENSE_ID + ", w." + DataBaseHelper.COLUMN_PERSON_ID + ", w." + DataBaseHelper.COLUMN_WEIGHT +
+			" FROM " + DataBaseHelper.TABLE_SPLIT_WEIGHTS + " w JOIN " + DataBaseHelper.TABLE_EXPENSES + " e" +
+			" ON e." + DataBaseHelper.COLUMN_ID + " = w." + DataBaseHelper.COLUMN_EXPENSE_ID +
+			" WHERE e." + DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION +
+			" ORDER BY e." + DataBaseHelper.COLUMN_PERSON_ID + ", e." + DataBaseHelper.COLUMN_DATE + ", e." + DataBaseHelper.COLUMN_ID;
+
+	private static final String INSERT_WEIGHT_SQL =
+			"INSERT INTO " + DataBaseHelper.TABLE_SPLIT_WEIGHTS + " (" +
+			DataBaseHelper.COLUMN_EXPENSE_ID + ", " + DataBaseHelper.COLUMN_PERSON_ID + ", " + DataBaseHelper.COLUMN_WEIGHT +
+			") VALUES (?, ?, ?)";
+	private static final String DELETE_WEIGHTS_SQL =
+			"DELETE FROM " + DataBaseHelper.TABLE_SPLIT_WEIGHTS + " WHERE " + DataBaseHelper.COLUMN_EXPENSE_ID + " = ?";
+
 	public ExpenseDataSource(DataBaseHelper dbHelper, Calculation calculation) {
 		super(dbHelper, DataBaseHelper.TABLE_EXPENSES, COLUMNS);
 		this.calculation = calculation;
+		summaryDataSource = new SummaryDataSource(dbHelper);
+		balanceDataSource = new BalanceDataSource(dbHelper);
 	}
 
 	@Override
 	protected ContentValues toContentValues(Expense expense) {
-		long fixedAmount = Math.round(expense.getAmount() * expense.getCurrency().getDecimalFactor());
 		ContentValues values = new ContentValues();
 		values.put(DataBaseHelper.COLUMN_PERSON_ID, expense.getPerson().getId());
 		values.put(DataBaseHelper.COLUMN_TITLE, expense.getTitle());
-		values.put(DataBaseHelper.COLUMN_AMOUNT, fixedAmount);
+		values.put(DataBaseHelper.COLUMN_AMOUNT, expense.getFixedAmount());
 		values.put(DataBaseHelper.COLUMN_CURRENCY_ID, expense.getCurrency().getId());
-		values.put(DataBaseHelper.COLUMN_DATE, expense.getDate().getTimeInMillis());
+		values.put(DataBaseHelper.COLUMN_DATE, expense.getEpochDay());
 		return values;
 	}
 
 	@Override
 	public Expense fromCursor(Cursor cursor) {
-		long id = cursor.getLong(0);
-		Expense expense = new Expense(calculation);
-		expense.setId(id);
-		expense.setPerson(calculation.getPersonById(cursor.getLong(1)));
-		expense.setTitle(cursor.getString(2));
+		Expense expense = fromCursorWithoutWeights(cursor);
 
-		long fixedAmount = cursor.getLong(3);
-		Currency currency = calculation.getCurrencyById(cursor.getLong(4));
-		expense.setCurrency(currency);
-		expense.setAmount((double)fixedAmount / currency.getDecimalFactor());
-
-		Calendar cal = Calendar.getInstance();
-		cal.setTimeInMillis(cursor.getLong(5));
-		expense.setDate(cal);
-
-		Map<Long, Double> weights = null;
+		double[] weights = null;
 
 		Cursor weightsCursor = getDatabase().query(
 				DataBaseHelper.TABLE_SPLIT_WEIGHTS,
 				new String[] { DataBaseHelper.COLUMN_PERSON_ID, DataBaseHelper.COLUMN_WEIGHT },
-				DataBaseHelper.COLUMN_EXPENSE_ID + " = ?", new String[] { Long.toString(id) },
+				DataBaseHelper.COLUMN_EXPENSE_ID + " = ?", new String[] { Long.toString(expense.getId()) },
 				null, null, null, null);
 
 		weightsCursor.moveToFirst();
 		if (!weightsCursor.isAfterLast()) {
-			weights = new HashMap<>();
+			weights = new double[calculation.getPersons().size()];
 			do {
-				weights.put(weightsCursor.getLong(0), weightsCursor.getDouble(1));
+				putWeight(weights, weightsCursor.getLong(0), weightsCursor.getDouble(1));
 			} while (weightsCursor.moveToNext());
 		}
 		weightsCursor.close();
 
-		expense.setSplitWeights(weights);
+		expense.setWeights(weights);
+		return expense;
+	}
+
+	private Expense fromCursorWithoutWeights(Cursor cursor) {
+		Expense expense = new Expense(calculation);
+		expense.setId(cursor.getLong(0));
+		expense.setPerson(calculation.getPersonById(cursor.getLong(1)));
+		expense.setTitle(cursor.getString(2));
+
+		expense.setCurrency(calculation.getCurrencyById(cursor.getLong(4)));
+		expense.setFixedAmount(cursor.getLong(3));
+		expense.setEpochDay(cursor.getInt(5));
+
 		return expense;
 	}
 
-	private void insertWeights(Expense expense) {
-		Map<Long, Double> weights = expense.getSplitWeights();
+	private void putWeight(double[] weights, long personId, double weight) {
+		int index = calculation.getPersonIndex(personId);
+		if (index >= 0)
+			weights[index] = weight;
+	}
+
+	private void insertWeights(WriteBatch batch, Expense expense) {
+		double[] weights = expense.getWeights();
 		if (weights != null) {
-			for (Map.Entry<Long, Double> entry : weights.entrySet()) {
-				ContentValues values = new ContentValues();
-				values.put(DataBaseHelper.COLUMN_EXPENSE_ID, expense.getId());
-				values.put(DataBaseHelper.COLUMN_PERSON_ID, entry.getKey());
-				values.put(DataBaseHelper.COLUMN_WEIGHT, entry.getValue());
-
-				getDatabase().insert(
-						DataBaseHelper.TABLE_SPLIT_WEIGHTS,
-						null,
-						values);
+			List<Person> persons = calculation.getPersons();
+			SQLiteStatement statement = batch.getStatement(INSERT_WEIGHT_SQL);
+			for (int i = 0; i < weights.length && i < persons.size(); i++) {
+				if (weights[i] == 0)
+					continue;
+				statement.bindLong(1, expense.getId());
+				statement.bindLong(2, persons.get(i).getId());
+				statement.bindDouble(3, weights[i]);
+				statement.executeInsert();
 			}
-		}		
+		}
 	}
 
-	private void deleteWeights(long id) {
-		getDatabase().delete(
-				DataBaseHelper.TABLE_SPLIT_WEIGHTS,
-				DataBaseHelper.COLUMN_EXPENSE_ID + "= ?", new String[] { Long.toString(id) });
+	private void deleteWeights(WriteBatch batch, long id) {
+		SQLiteStatement statement = batch.getStatement(DELETE_WEIGHTS_SQL);
+		statement.bindLong(1, id);
+		statement.execute();
+	}
+
+	private Expense getStored(WriteBatch batch, long id) {
+		Cursor cursor = batch.getDatabase().query(
+				DataBaseHelper.TABLE_EXPENSES, COLUMNS,
+				DataBaseHelper.COLUMN_ID + " = ?", new String[] { Long.toString(id) },
+				null, null, null);
+		Expense expense = null;
+		if (cursor.moveToFirst())
+			expense = fromCursor(cursor);
+		cursor.close();
+		return expense;
+	}
+
+	// Updates the ledger and the summary after the expense rows have been
+	// written; removed or added may be null. The ledger tells by how much
+	// the total changes, so a write costs no pass over the expenses. An
+	// incomplete ledger is rebuilt once from the stored expenses, which
+	// already include the change.
+	private void updateSummary(WriteBatch batch, Expense removed, Expense added) {
+		long calculationId = calculation.getId();
+		if (balanceDataSource.rebuildIfIncomplete(batch, calculationId)) {
+			summaryDataSource.refreshTotal(batch, calculationId);
+		} else {
+			long totalChange = 0;
+			if (removed != null)
+				totalChange += balanceDataSource.removeExpense(batch, removed);
+			if (added != null)
+				totalChange += balanceDataSource.addExpense(batch, added);
+			summaryDataSource.addToTotal(batch, calculationId, totalChange);
+		}
+
+		if (removed != null)
+			summaryDataSource.removeExpense(batch, calculationId, removed.getEpochDay());
+		if (added != null)
+			summaryDataSource.addExpense(batch, calculationId, added.getEpochDay());
 	}
 
 	@Override
-	public long insert(Expense expense) {
-		long insertId = super.insert(expense);
-		insertWeights(expense);
+	long insert(WriteBatch batch, Expense expense) {
+		long insertId = insertWithoutSummary(batch, expense);
+		updateSummary(batch, null, expense);
 		return insertId;
 	}
 
+	// For bulk writes; the caller has to rebuild the summary and drop the
+	// balance ledger of the calculation afterwards.
+	long insertWithoutSummary(WriteBatch batch, Expense expense) {
+		long insertId = super.insert(batch, expense);
+		insertWeights(batch, expense);
+		return insertId;
+	}
+
+	// Inserts many expenses in a single transaction. The summary is rebuilt
+	// and the balance ledger dropped once on success instead of per row.
+	// Usage is the same as for a WriteBatch:
+	//
+	//   BulkInsert bulk = dataSource.beginBulkInsert();
+	//   try {
+	//       while (...)
+	//           bulk.add(expense);
+	//       bulk.setSuccessful();
+	//   } finally {
+	//       bulk.end();
+	//   }
+	public class BulkInsert {
+
+		private final WriteBatch batch = beginBatch();
+		private int count = 0;
+
+		private BulkInsert() {
+		}
+
+		public void add(Expense expense) {
+			insertWithoutSummary(batch, expense);
+			count++;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public void setSuccessful() {
+			// drop the ledger first, so the summary takes its total from the expenses
+			balanceDataSource.deleteByCalculation(batch, calculation.getId());
+			summaryDataSource.rebuild(batch, calculation.getId());
+			batch.setSuccessful();
+		}
+
+		public void end() {
+			batch.end();
+		}
+
+	}
+
+	public BulkInsert beginBulkInsert() {
+		return new BulkInsert();
+	}
+
+	@Override
+	void update(WriteBatch batch, Expense expense) {
+		Expense stored = getStored(batch, expense.getId());
+		super.update(batch, expense);
+		deleteWeights(batch, expense.getId());
+		insertWeights(batch, expense);
+		updateSummary(batch, stored, expense);
+	}
+
+	@Override
+	void delete(WriteBatch batch, long id) {
+		Expense stored = getStored(batch, id);
+		deleteWeights(batch, id);
+		super.delete(batch, id);
+		if (stored != null)
+			updateSummary(batch, stored, null);
+	}
+
+	@Override
+	public long insert(Expense expense) {
+		return super.insert(expense);
+	}
+
 	@Override
 	public void update(Expense expense) {
 		super.update(expense);
-		deleteWeights(expense.getId());
-		insertWeights(expense);
 	}
 
 	@Override
 	public void delete(long id) {
-		deleteWeights(id);
 		super.delete(id);
 	}
 
@@ -145,4 +289,107 @@ public class ExpenseDataSource extends AbstractDataSource<Expense> {
 				null, null, DataBaseHelper.COLUMN_DATE);
 	}
 
+	// Loads all expenses of the calculation including their split weights
+	// with two queries, ordered by payer and date.
+	public List<Expense> listByCalculation() {
+		String[] args = new String[] { Long.toString(calculation.getId()) };
+
+		Cursor cursor = getDatabase().query(
+				DataBaseHelper.TABLE_EXPENSES, COLUMNS,
+				DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION, args,
+				null, null, LIST_ORDER);
+
+		List<Expense> expenses = new ArrayList<>(cursor.getCount());
+		Map<Long, Expense> expensesById = new HashMap<>();
+
+		cursor.moveToFirst();
+		while (!cursor.isAfterLast()) {
+			Expense expense = fromCursorWithoutWeights(cursor);
+			expenses.add(expense);
+			expensesById.put(expense.getId(), expense);
+			cursor.moveToNext();
+		}
+		cursor.close();
+
+		if (expenses.isEmpty())
+			return expenses;
+
+		Cursor weightsCursor = getDatabase().query(
+				DataBaseHelper.TABLE_SPLIT_WEIGHTS,
+				new String[] { DataBaseHelper.COLUMN_EXPENSE_ID, DataBaseHelper.COLUMN_PERSON_ID, DataBaseHelper.COLUMN_WEIGHT },
+				DataBaseHelper.COLUMN_EXPENSE_ID + " IN " + EXPENSES_BY_CALCULATION, args,
+				null, null, DataBaseHelper.COLUMN_EXPENSE_ID);
+
+		// rows arrive grouped by expense, so only look up the map on a change
+		long currentId = -1;
+		double[] weights = null;
+
+		weightsCursor.moveToFirst();
+		while (!weightsCursor.isAfterLast()) {
+			long expenseId = weightsCursor.getLong(0);
+			if (expenseId != currentId) {
+				currentId = expenseId;
+				weights = null;
+				Expense expense = expensesById.get(expenseId);
+				if (expense != null) {
+					weights = new double[calculation.getPersons().size()];
+					expense.setWeights(weights);
+				}
+			}
+			if (weights != null)
+				putWeight(weights, weightsCursor.getLong(1), weightsCursor.getDouble(2));
+			weightsCursor.moveToNext();
+		}
+		weightsCursor.close();
+
+		return expenses;
+	}
+
+	// Reads the expenses straight into the columns of a table, in the same
+	// order as listByCalculation().
+	public ExpenseTable tableByCalculation() {
+		String[] args = new String[] { Long.toString(calculation.getId()) };
+
+		Cursor cursor = getDatabase().query(
+				DataBaseHelper.TABLE_EXPENSES, COLUMNS,
+				DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION, args,
+				null, null, LIST_ORDER);
+
+		ExpenseTable table = new ExpenseTable(calculation, cursor.getCount());
+		cursor.moveToFirst();
+		while (!cursor.isAfterLast()) {
+			table.add(cursor.getLong(0),
+					calculation.getPersonIndex(cursor.getLong(1)),
+					cursor.getString(2),
+					cursor.getLong(3),
+					calculation.getCurrencyIndex(cursor.getLong(4)),
+					cursor.getInt(5));
+			cursor.moveToNext();
+		}
+		cursor.close();
+
+		if (table.size() == 0)
+			return table;
+
+		// weights arrive in the order of the rows, so a single pass matches
+		// them up without a map
+		Cursor weightsCursor = getDatabase().rawQuery(TABLE_WEIGHTS_SQL, args);
+		int row = 0;
+		weightsCursor.moveToFirst();
+		while (!weightsCursor.isAfterLast()) {
+			long expenseId = weightsCursor.getLong(0);
+			while (row < table.size() && table.getId(row) != expenseId)
+				row++;
+			if (row == table.size())
+				break;
+			int index = calculation.getPersonIndex(weightsCursor.getLong(1));
+			if (index >= 0)
+				table.setWeight(row, index, weightsCursor.getDouble(2));
+			weightsCursor.moveToNext();
+		}
+		weightsCursor.close();
+
+		return table;
+	}
+
 }
@@ -24,6 +24,8 @@ import android.database.Cursor;
 public class PersonDataSource extends AbstractDataSource<Person> {
 
 	private final Calculation calculation;
+	private final SummaryDataSource summaryDataSource;
+	private final BalanceDataSource balanceDataSource;
 
 	private static final String[] COLUMNS = {
 		DataBaseHelper.COLUMN_ID,
@@ -34,6 +36,8 @@ public class PersonDataSource extends AbstractDataSource<Person> {
 	public PersonDataSource(DataBaseHelper dbHelper, Calculation calculation) {
 		super(dbHelper, DataBaseHelper.TABLE_PERSONS, COLUMNS);
 		this.calculation = calculation;
+		summaryDataSource = new SummaryDataSource(dbHelper);
+		balanceDataSource = new BalanceDataSource(dbHelper);
 	}
 
 	@Override
@@ -52,6 +56,27 @@ public class PersonDataSource extends AbstractDataSource<Person> {
 		return person;
 	}
 
+	@Override
+	long insert(WriteBatch batch, Person person) {
+		long insertId = super.insert(batch, person);
+		summaryDataSource.addPerson(batch, calculation.getId(), person.getName());
+		balanceDataSource.create(batch, insertId, calculation.getId());
+		return insertId;
+	}
+
+	@Override
+	void update(WriteBatch batch, Person person) {
+		super.update(batch, person);
+		summaryDataSource.refreshPersons(batch, calculation.getId());
+	}
+
+	@Override
+	void delete(WriteBatch batch, long id) {
+		super.delete(batch, id);
+		summaryDataSource.refreshPersons(batch, calculation.getId());
+		balanceDataSource.delete(batch, id);
+	}
+
 	public Cursor listByCalculation() {
 		return getDatabase().query(
 				DataBaseHelper.TABLE_PERSONS, COLUMNS,
@@ -0,0 +1,232 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.dao;
+
+import ivl.android.moneybalance.data.CalculationSummary;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+// Maintains the calculation_summaries table, which holds the figures shown
+// in the calculation list. The write paths of the other data sources keep
+// it up to date, so listing calculations never has to load any expenses.
+public class SummaryDataSource {
+
+	private final DataBaseHelper dbHelper;
+
+	private static final String PERSONS_BY_CALCULATION =
+			"(SELECT " + DataBaseHelper.COLUMN_ID + " FROM " + DataBaseHelper.TABLE_PERSONS +
+			" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?1)";
+
+	private static final String LIST_SQL =
+			"SELECT c." + DataBaseHelper.COLUMN_ID +
+			", c." + DataBaseHelper.COLUMN_TITLE +
+			", c." + DataBaseHelper.COLUMN_CURRENCY +
+			", IFNULL(s." + DataBaseHelper.COLUMN_EXPENSE_COUNT + ", 0)" +
+			", IFNULL(s." + DataBaseHelper.COLUMN_EXPENSE_TOTAL + ", 0)" +
+			", s." + DataBaseHelper.COLUMN_FIRST_DATE +
+			", s." + DataBaseHelper.COLUMN_LAST_DATE +
+			", IFNULL(s." + DataBaseHelper.COLUMN_PERSON_NAMES + ", '')" +
+			" FROM " + DataBaseHelper.TABLE_CALCULATIONS + " c" +
+			" LEFT JOIN " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " s" +
+			" ON s." + DataBaseHelper.COLUMN_ID + " = c." + DataBaseHelper.COLUMN_ID;
+
+	private static final String CREATE_SQL =
+			"INSERT OR REPLACE INTO " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " (" +
+			DataBaseHelper.COLUMN_ID + ", " + DataBaseHelper.COLUMN_EXPENSE_COUNT + ", " +
+			DataBaseHelper.COLUMN_EXPENSE_TOTAL + ", " + DataBaseHelper.COLUMN_PERSON_NAMES +
+			") VALUES (?, 0, 0, '')";
+
+	private static final String ADD_EXPENSE_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_EXPENSE_COUNT + " = " + DataBaseHelper.COLUMN_EXPENSE_COUNT + " + 1, " +
+			DataBaseHelper.COLUMN_FIRST_DATE + " = MIN(IFNULL(" + DataBaseHelper.COLUMN_FIRST_DATE + ", ?1), ?1), " +
+			DataBaseHelper.COLUMN_LAST_DATE + " = MAX(IFNULL(" + DataBaseHelper.COLUMN_LAST_DATE + ", ?1), ?1)" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?2";
+
+	private static final String REMOVE_EXPENSE_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_EXPENSE_COUNT + " = " + DataBaseHelper.COLUMN_EXPENSE_COUNT + " - 1" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?";
+
+	// only rescans the dates if the removed date was on the boundary
+	private static final String REFRESH_DATES_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_FIRST_DATE + " = (SELECT MIN(" + DataBaseHelper.COLUMN_DATE + ") FROM " + DataBaseHelper.TABLE_EXPENSES +
+					" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION + "), " +
+			DataBaseHelper.COLUMN_LAST_DATE + " = (SELECT MAX(" + DataBaseHelper.COLUMN_DATE + ") FROM " + DataBaseHelper.TABLE_EXPENSES +
+					" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION + ")" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?1" +
+			" AND (?2 IS NULL OR " + DataBaseHelper.COLUMN_FIRST_DATE + " IS NULL" +
+					" OR ?2 <= " + DataBaseHelper.COLUMN_FIRST_DATE + " OR ?2 >= " + DataBaseHelper.COLUMN_LAST_DATE + ")";
+
+	private static final String REFRESH_COUNT_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_EXPENSE_COUNT + " = (SELECT COUNT(*) FROM " + DataBaseHelper.TABLE_EXPENSES +
+					" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + PERSONS_BY_CALCULATION + ")" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?1";
+
+	private static final String ADD_TO_TOTAL_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_EXPENSE_TOTAL + " = " + DataBaseHelper.COLUMN_EXPENSE_TOTAL + " + ?" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?";
+
+	private static final String SET_TOTAL_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_EXPENSE_TOTAL + " = ?" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?";
+
+	private static final String APPEND_PERSON_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_PERSON_NAMES + " = CASE WHEN " + DataBaseHelper.COLUMN_PERSON_NAMES + " = ''" +
+					" THEN ?1 ELSE " + DataBaseHelper.COLUMN_PERSON_NAMES + " || ', ' || ?1 END" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?2";
+
+	private static final String REFRESH_PERSONS_SQL =
+			"UPDATE " + DataBaseHelper.TABLE_CALCULATION_SUMMARIES + " SET " +
+			DataBaseHelper.COLUMN_PERSON_NAMES + " = IFNULL((SELECT GROUP_CONCAT(" + DataBaseHelper.COLUMN_NAME + ", ', ') FROM" +
+					" (SELECT " + DataBaseHelper.COLUMN_NAME + " FROM " + DataBaseHelper.TABLE_PERSONS +
+					" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?1 ORDER BY " + DataBaseHelper.COLUMN_ID + ")), '')" +
+			" WHERE " + DataBaseHelper.COLUMN_ID + " = ?1";
+
+	public SummaryDataSource(DataBaseHelper dbHelper) {
+		this.dbHelper = dbHelper;
+	}
+
+	public Cursor listAll() {
+		return dbHelper.getWritableDatabase().rawQuery(LIST_SQL, null);
+	}
+
+	public CalculationSummary get(long calculationId) {
+		Cursor cursor = dbHelper.getWritableDatabase().rawQuery(
+				LIST_SQL + " WHERE c." + DataBaseHelper.COLUMN_ID + " = ?",
+				new String[] { Long.toString(calculationId) });
+		cursor.moveToFirst();
+		CalculationSummary summary = fromCursor(cursor);
+		cursor.close();
+		return summary;
+	}
+
+	public CalculationSummary fromCursor(Cursor cursor) {
+		CalculationSummary summary = new CalculationSummary(cursor.getString(1), cursor.getString(2));
+		summary.setId(cursor.getLong(0));
+		summary.setExpenseCount(cursor.getInt(3));
+		summary.setFixedExpenseTotal(cursor.getLong(4));
+		if (!cursor.isNull(5) && !cursor.isNull(6))
+			summary.setDateRange(cursor.getInt(5), cursor.getInt(6));
+		summary.setPersonNames(cursor.getString(7));
+		return summary;
+	}
+
+	void create(WriteBatch batch, long calculationId) {
+		SQLiteStatement statement = batch.getStatement(CREATE_SQL);
+		statement.bindLong(1, calculationId);
+		statement.execute();
+	}
+
+	void delete(WriteBatch batch, long calculationId) {
+		batch.getDatabase().delete(
+				DataBaseHelper.TABLE_CALCULATION_SUMMARIES,
+				DataBaseHelper.COLUMN_ID + " = ?", new String[] { Long.toString(calculationId) });
+	}
+
+	// Counts an expense and its date; the total is updated separately.
+	void addExpense(WriteBatch batch, long calculationId, int epochDay) {
+		SQLiteStatement statement = batch.getStatement(ADD_EXPENSE_SQL);
+		statement.bindLong(1, epochDay);
+		statement.bindLong(2, calculationId);
+		statement.execute();
+	}
+
+	// Must be called after the expense row has been deleted or changed.
+	void removeExpense(WriteBatch batch, long calculationId, int epochDay) {
+		SQLiteStatement statement = batch.getStatement(REMOVE_EXPENSE_SQL);
+		statement.bindLong(1, calculationId);
+		statement.execute();
+
+		statement = batch.getStatement(REFRESH_DATES_SQL);
+		statement.bindLong(1, calculationId);
+		statement.bindLong(2, epochDay);
+		statement.execute();
+	}
+
+	// Adds the change of the total in minor units of the main currency, as
+	// returned by the balance ledger.
+	void addToTotal(WriteBatch batch, long calculationId, long amount) {
+		if (amount == 0)
+			return;
+		SQLiteStatement statement = batch.getStatement(ADD_TO_TOTAL_SQL);
+		statement.bindLong(1, amount);
+		statement.bindLong(2, calculationId);
+		statement.execute();
+	}
+
+	void addPerson(WriteBatch batch, long calculationId, String name) {
+		SQLiteStatement statement = batch.getStatement(APPEND_PERSON_SQL);
+		statement.bindString(1, name);
+		statement.bindLong(2, calculationId);
+		statement.execute();
+	}
+
+	void refreshPersons(WriteBatch batch, long calculationId) {
+		SQLiteStatement statement = batch.getStatement(REFRESH_PERSONS_SQL);
+		statement.bindLong(1, calculationId);
+		statement.execute();
+	}
+
+	// Recomputes the total, e.g. after an exchange rate has changed. The
+	// balance ledger holds the sums per currency, so this costs one exchange
+	// per currency and rate period and no pass over the expenses.
+	void refreshTotal(WriteBatch batch, long calculationId) {
+		long total = new BalanceDataSource(dbHelper).getFixedExpenseTotal(batch.getDatabase(), calculationId);
+
+		SQLiteStatement statement = batch.getStatement(SET_TOTAL_SQL);
+		statement.bindLong(1, total);
+		statement.bindLong(2, calculationId);
+		statement.execute();
+	}
+
+	// Recomputes all figures of a calculation from scratch.
+	void rebuild(WriteBatch batch, long calculationId) {
+		create(batch, calculationId);
+		refreshPersons(batch, calculationId);
+
+		SQLiteStatement statement = batch.getStatement(REFRESH_COUNT_SQL);
+		statement.bindLong(1, calculationId);
+		statement.execute();
+
+		statement = batch.getStatement(REFRESH_DATES_SQL);
+		statement.bindLong(1, calculationId);
+		statement.bindNull(2);
+		statement.execute();
+
+		refreshTotal(batch, calculationId);
+	}
+
+	void rebuildAll(WriteBatch batch) {
+		Cursor cursor = batch.getDatabase().query(
+				DataBaseHelper.TABLE_CALCULATIONS, new String[] { DataBaseHelper.COLUMN_ID },
+				null, null, null, null, null);
+		cursor.moveToFirst();
+		while (!cursor.isAfterLast()) {
+			rebuild(batch, cursor.getLong(0));
+			cursor.moveToNext();
+		}
+		cursor.close();
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+// A group of writes executed in a single transaction. Compiled statements
+// are cached by their SQL text and reused until the batch ends. Usage:
+//
+//   WriteBatch batch = dataSource.beginBatch();
+//   try {
+//       ...
+//       batch.setSuccessful();
+//   } finally {
+//       batch.end();
+//   }
+class WriteBatch {
+
+	private final SQLiteDatabase db;
+	private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+	WriteBatch(SQLiteDatabase db) {
+		this.db = db;
+		db.beginTransaction();
+	}
+
+	SQLiteDatabase getDatabase() {
+		return db;
+	}
+
+	SQLiteStatement getStatement(String sql) {
+		SQLiteStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = db.compileStatement(sql);
+			statements.put(sql, statement);
+		} else {
+			statement.clearBindings();
+		}
+		return statement;
+	}
+
+	void setSuccessful() {
+		db.setTransactionSuccessful();
+	}
+
+	void end() {
+		for (SQLiteStatement statement : statements.values())
+			statement.close();
+		statements.clear();
+		db.endTransaction();
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * MoneyBalance - Android-based calculator for tracking and balancing expenses
+ * Copyright (C) 2012 Ingo van Lil <inguin@gmx.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ivl.android.moneybalance.dao;
+
+import ivl.android.moneybalance.data.Calculation;
+import ivl.android.moneybalance.data.CalculationGenerator;
+
+import java.util.Arrays;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.util.Log;
+
+// Opening a calculation should cost the same however many other
+// calculations the database holds, since every lookup on the way goes
+// through an index on the calculation, person or expense id. Run with
+// "./gradlew connectedAndroidTest"; the measured times are logged, and the
+// lookups are checked to use the indexes.
+public class OpenCalculationBenchmark extends AndroidTestCase {
+
+	private static final int[] OTHER_CALCULATION_COUNTS = { 0, 100, 400 };
+	private static final int EXPENSE_COUNT = 200;
+	private static final int WARMUP_OPENS = 3;
+	private static final int MEASURED_OPENS = 15;
+
+	private DataBaseHelper dbHelper;
+	private CalculationDataSource dataSource;
+	private int seed = 0;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// keeps the app's own database untouched
+		RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "benchmark_");
+		context.deleteDatabase("moneybalance.db");
+		dbHelper = new DataBaseHelper(context);
+		dataSource = new CalculationDataSource(dbHelper);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		dbHelper.close();
+		super.tearDown();
+	}
+
+	public void testOpenTimeIndependentOfOtherCalculations() {
+		long id = dataSource.insertCalculation(generate("Opened")).getId();
+
+		int others = 0;
+		for (int count : OTHER_CALCULATION_COUNTS) {
+			for (; others < count; others++)
+				dataSource.insertCalculation(generate("Other " + others));
+			long median = medianOpenNanos(id);
+			Log.i("moneybalance", String.format("open with %d other calculations: %.2f ms",
+					others, median / 1e6));
+			assertIndexedLookups(id);
+		}
+	}
+
+	private Calculation generate(String title) {
+		CalculationGenerator generator = CalculationGenerator.of(seed++, 5, EXPENSE_COUNT, "EUR", "USD", "GBP");
+		generator.setTitle(title);
+		return generator.generate();
+	}
+
+	// Timings are too noisy to assert on a device; the query plans are not.
+	// None of the lookups done while opening may scan a whole table.
+	private void assertIndexedLookups(long id) {
+		String[] args = { Long.toString(id) };
+		assertNoTableScan("SELECT * FROM " + DataBaseHelper.TABLE_PERSONS +
+				" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?", args);
+		assertNoTableScan("SELECT * FROM " + DataBaseHelper.TABLE_CURRENCIES +
+				" WHERE " + DataBaseHelper.COLUMN_CALCULATION_ID + " = ?", args);
+		assertNoTableScan("SELECT * FROM " + DataBaseHelper.TABLE_EXPENSES +
+				" WHERE " + DataBaseHelper.COLUMN_PERSON_ID + " IN " + ExpenseDataSource.PERSONS_BY_CALCULATION, args);
+		assertNoTableScan("SELECT * FROM " + DataBaseHelper.TABLE_SPLIT_WEIGHTS +
+				" WHERE " + DataBaseHelper.COLUMN_EXPENSE_ID + " IN " + ExpenseDataSource.EXPENSES_BY_CALCULATION, args);
+	}
+
+	private void assertNoTableScan(String sql, String[] args) {
+		Cursor cursor = dbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+		int detail = cursor.getColumnIndexOrThrow("detail");
+		cursor.moveToFirst();
+		while (!cursor.isAfterLast()) {
+			String step = cursor.getString(detail);
+			assertFalse(sql + ": " + step, step.startsWith("SCAN"));
+			cursor.moveToNext();
+		}
+		cursor.close();
+	}
+
+	private long medianOpenNanos(long id) {
+		for (int i = 0; i < WARMUP_OPENS; i++)
+			assertEquals(EXPENSE_COUNT, dataSource.get(id).getExpenses().size());
+
+		long[] times = new long[MEASURED_OPENS];
+		for (int i = 0; i < MEASURED_OPENS; i++) {
+			long start = System.nanoTime();
+			dataSource.get(id);
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+		return times[MEASURED_OPENS / 2];
+	}
+
+}